@@ -0,0 +1,71 @@
+#!/bin/bash
+# /opt/qilletni/run_all_docs.sh
+#
+# Regenerates the docs of every library in /opt/qilletni/allowed_releases.json at once.
+# Each repository is cloned a single time into /tmp/qilletni-checkouts/<owner>/<repo>, and then
+# one Docker container (using OpenJDK 22) generates every library's docs in a single JVM with:
+#
+#    java -jar /tmp/app.jar doc --manifest allowed_releases.json --checkouts /tmp/qilletni-checkouts
+#
+# The global index is only regenerated once, after every library is done.
+#
+# Requirements: git, curl, jq, docker, and /opt/qilletni/allowed_releases.json
+
+CONTAINER_NAME="qilletni_app_all_docs"
+SERVE_PATH="/srv/docker/nginx/php/docs.qilletni.dev"
+CACHE_PATH="/opt/qilletni/cache"
+CHECKOUTS_PATH="/tmp/qilletni-checkouts"
+
+set -euo pipefail
+
+ALLOWED_JSON="/opt/qilletni/allowed_releases.json"
+if [ ! -f "$ALLOWED_JSON" ]; then
+  echo "Error: Allowed releases file not found at $ALLOWED_JSON"
+  exit 1
+fi
+
+rm -rf "$CHECKOUTS_PATH"
+mkdir -p "$CHECKOUTS_PATH"
+
+# Several libraries may live in the same repository, so each repository is only cloned once.
+for REPO_ENTRY in $(jq -r '.releases[].repo' "$ALLOWED_JSON" | sort -u); do
+  if [[ ! "$REPO_ENTRY" =~ ^[a-zA-Z0-9_.-]+/[a-zA-Z0-9_.-]+$ ]]; then
+    echo "Error: Invalid repository '$REPO_ENTRY' in $ALLOWED_JSON"
+    exit 1
+  fi
+
+  CLONE_URL="https://github.com/${REPO_ENTRY}.git"
+  echo "Cloning repository from $CLONE_URL into ${CHECKOUTS_PATH}/${REPO_ENTRY}..."
+  git clone --depth 1 "$CLONE_URL" "${CHECKOUTS_PATH}/${REPO_ENTRY}"
+done
+
+# Define the jar asset location.
+TOOLCHAIN_JAR="/tmp/Qilletni.jar"
+
+/opt/qilletni/download_toolchain.sh "${TOOLCHAIN_JAR}"
+
+mkdir -p "${CACHE_PATH}"
+
+echo "Stopping any existing container named ${CONTAINER_NAME}..."
+if docker ps -q --filter "name=${CONTAINER_NAME}" | grep -q .; then
+  docker stop "${CONTAINER_NAME}"
+  docker rm "${CONTAINER_NAME}"
+fi
+
+echo "Pulling OpenJDK 22 image..."
+docker pull openjdk:22
+
+echo "Starting Docker container ${CONTAINER_NAME}..."
+docker run --rm --name "${CONTAINER_NAME}" \
+  -v "${SERVE_PATH}":"${SERVE_PATH}":rw \
+  -v "${CACHE_PATH}":"${CACHE_PATH}":rw \
+  -v "${ALLOWED_JSON}":"${ALLOWED_JSON}":ro \
+  -v "/tmp":"/tmp":rw \
+  openjdk:22 \
+  bash -c "\
+    set -euo pipefail; \
+    echo 'Running application with Java 22...'; \
+    java -jar ${TOOLCHAIN_JAR} doc -o ${SERVE_PATH} -c ${CACHE_PATH} --manifest ${ALLOWED_JSON} --checkouts ${CHECKOUTS_PATH} \
+  "
+
+echo "Deployment complete."
@@ -28,6 +28,12 @@ shift
 goto parse
 
 :done
+:: Use the class data sharing archive created by "qilletni cds" if there is one, the JVM ignores it if it doesn't match
+set "JSA_PATH=%JAR_PATH:.jar=.jsa%"
+if exist "%JSA_PATH%" (
+    set JAVA_OPTS=!JAVA_OPTS! -XX:SharedArchiveFile="!JSA_PATH!" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off
+)
+
 :: Run java with all -D options first, then -jar, then pass other args to the JAR
 java %JAVA_OPTS% -jar "%JAR_PATH%" %OTHER_ARGS%
 
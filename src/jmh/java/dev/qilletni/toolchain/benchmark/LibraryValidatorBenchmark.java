@@ -0,0 +1,49 @@
+package dev.qilletni.toolchain.benchmark;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.qll.LibraryValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks validating the dependencies of a set of libraries, each depending on a number of the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryValidatorBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int libraryCount;
+
+    @Param({"1", "5", "20"})
+    public int fanOut;
+
+    private List<QllInfo> libraries;
+
+    @Setup(Level.Trial)
+    public void createLibraries() {
+        libraries = new SyntheticLibraryGenerator().createDependentLibraries(libraryCount, fanOut);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return new LibraryValidator(libraries).validate();
+    }
+}
@@ -0,0 +1,62 @@
+package dev.qilletni.toolchain.benchmark;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks reading a <code>qilletni_info.yml</code> with a given number of dependencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QilletniInfoBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int dependencyCount;
+
+    private Path workDirectory;
+    private Path sourcePath;
+
+    @Setup(Level.Trial)
+    public void generateInfo() throws IOException {
+        workDirectory = Files.createTempDirectory("ql-bench-info");
+
+        var dependencies = IntStream.range(0, dependencyCount).mapToObj(i -> "dependency" + i).toList();
+        var shape = new SyntheticLibraryGenerator.LibraryShape(0, 0, 0);
+
+        sourcePath = new SyntheticLibraryGenerator().generateProject(workDirectory, "info", shape, dependencies).sourcePath();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInfo() {
+        FileUtil.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public QilletniInfoData readQilletniInfo() throws IOException {
+        return QilletniInfoParser.readQilletniInfo(sourcePath);
+    }
+}
@@ -0,0 +1,92 @@
+package dev.qilletni.toolchain.benchmark;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.impl.lib.LibrarySourceFileResolver;
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.qll.QllArchive;
+import dev.qilletni.toolchain.qll.QllJarExtractor;
+import dev.qilletni.toolchain.qll.QllLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading a library, both from a packaged .qll and from a local project, and extracting its native jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QllLoadBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fileCount;
+
+    @Param({"4096"})
+    public int sourceSize;
+
+    @Param({"0", "1048576", "16777216"})
+    public int nativeJarSize;
+
+    private Path workDirectory;
+    private Path qllPath;
+    private Path projectRoot;
+    private Path extractDirectory;
+
+    @Setup(Level.Trial)
+    public void generateLibraries() throws IOException {
+        workDirectory = Files.createTempDirectory("ql-bench-load");
+
+        var generator = new SyntheticLibraryGenerator();
+        var shape = new SyntheticLibraryGenerator.LibraryShape(fileCount, sourceSize, nativeJarSize);
+
+        qllPath = generator.generateQll(workDirectory, "packaged", shape);
+        projectRoot = generator.generateProject(workDirectory.resolve("local"), "local", shape, List.of()).projectRoot();
+
+        extractDirectory = workDirectory.resolve("extracted");
+        Files.createDirectories(extractDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLibraries() {
+        FileUtil.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public QllInfo loadQll() throws IOException {
+        try (var qllArchive = QllArchive.open(qllPath)) {
+            return new QllLoader().loadQll(new LibrarySourceFileResolver(), qllArchive);
+        }
+    }
+
+    @Benchmark
+    public QllInfo loadLocalLibrary() throws IOException {
+        return new QllLoader().loadLocalLibrary(new LibrarySourceFileResolver(), projectRoot);
+    }
+
+    @Benchmark
+    public ClassLoader extractJarTo() {
+        var qllJarExtractor = new QllJarExtractor();
+        qllJarExtractor.extractJarTo(qllPath, extractDirectory);
+
+        return qllJarExtractor.createClassLoader();
+    }
+}
@@ -0,0 +1,78 @@
+package dev.qilletni.toolchain.benchmark;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.qll.QllPackager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Benchmarks packaging a library project into a .qll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QllPackageBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fileCount;
+
+    @Param({"4096"})
+    public int sourceSize;
+
+    @Param({"0", "16777216"})
+    public int nativeJarSize;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path workDirectory;
+    private SyntheticLibraryGenerator.GeneratedProject project;
+    private QllInfo qllInfo;
+    private Path qllPath;
+
+    @Setup(Level.Trial)
+    public void generateProject() throws IOException {
+        workDirectory = Files.createTempDirectory("ql-bench-package");
+
+        var generator = new SyntheticLibraryGenerator();
+        var shape = new SyntheticLibraryGenerator.LibraryShape(fileCount, sourceSize, nativeJarSize);
+
+        project = generator.generateProject(workDirectory.resolve("project"), "packaged", shape, List.of());
+        qllInfo = generator.createQllInfo("packaged", List.of());
+        qllPath = workDirectory.resolve("packaged-1.0.0.qll");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() {
+        FileUtil.deleteDirectory(workDirectory);
+    }
+
+    @Benchmark
+    public Path packageQll() throws IOException {
+        new QllPackager(Deflater.DEFAULT_COMPRESSION, parallel).packageQll(qllInfo, project.sourcePath(), project.nativeJar(), qllPath);
+
+        return qllPath;
+    }
+}
@@ -0,0 +1,199 @@
+package dev.qilletni.toolchain.benchmark;
+
+import dev.qilletni.api.lib.qll.ComparableVersion;
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.api.lib.qll.Version;
+import dev.qilletni.toolchain.qll.QllPackager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates library projects and .qll files of a given size for the benchmarks, entirely on disk and from a fixed
+ * seed, so every run benchmarks the same libraries.
+ */
+public class SyntheticLibraryGenerator {
+
+    /**
+     * The number of source files put in each directory, so larger libraries also have nested directories.
+     */
+    private static final int FILES_PER_DIRECTORY = 16;
+
+    /**
+     * The size of each class in the generated native jars.
+     */
+    private static final int CLASS_SIZE = 4096;
+
+    private final Random random = new Random(0x5EED);
+
+    /**
+     * The shape of a generated library.
+     *
+     * @param fileCount     The number of <code>.ql</code> files
+     * @param sourceSize    The size in bytes of each <code>.ql</code> file
+     * @param nativeJarSize The total size in bytes of the classes in the native jar, or 0 for no native jar
+     */
+    public record LibraryShape(int fileCount, int sourceSize, int nativeJarSize) {}
+
+    /**
+     * Generates a library project, with a <code>qilletni-src</code> directory and a built native jar.
+     *
+     * @param projectRoot  The directory to generate the project in
+     * @param name         The name of the library
+     * @param shape        The size of the library
+     * @param dependencies The names of libraries it depends on, all at version <code>^1.0.0</code>
+     * @return The generated project
+     */
+    public GeneratedProject generateProject(Path projectRoot, String name, LibraryShape shape, List<String> dependencies) throws IOException {
+        var sourcePath = projectRoot.resolve("qilletni-src");
+        Files.createDirectories(sourcePath);
+
+        Files.writeString(sourcePath.resolve("qilletni_info.yml"), createQilletniInfo(name, dependencies));
+
+        for (int i = 0; i < shape.fileCount(); i++) {
+            var directory = sourcePath.resolve("dir" + (i / FILES_PER_DIRECTORY));
+            Files.createDirectories(directory);
+
+            Files.writeString(directory.resolve("file" + i + ".ql"), createSource(i, shape.sourceSize()));
+        }
+
+        Optional<Path> nativeJar = Optional.empty();
+
+        if (shape.nativeJarSize() > 0) {
+            var jarPath = projectRoot.resolve("build").resolve("libs").resolve(name + ".jar");
+            Files.createDirectories(jarPath.getParent());
+
+            writeNativeJar(jarPath, name, shape.nativeJarSize());
+            nativeJar = Optional.of(jarPath);
+        }
+
+        return new GeneratedProject(projectRoot, sourcePath, nativeJar);
+    }
+
+    /**
+     * Generates a library project and packages it into a .qll.
+     *
+     * @param workDirectory The directory to generate the project and .qll in
+     * @param name          The name of the library
+     * @param shape         The size of the library
+     * @return The path of the .qll
+     */
+    public Path generateQll(Path workDirectory, String name, LibraryShape shape) throws IOException {
+        var project = generateProject(workDirectory.resolve(name), name, shape, List.of());
+        var qllPath = workDirectory.resolve(name + "-1.0.0.qll");
+
+        new QllPackager().packageQll(createQllInfo(name, List.of()), project.sourcePath(), project.nativeJar(), qllPath);
+
+        return qllPath;
+    }
+
+    /**
+     * Creates the info of libraries that depend on each other, without generating anything on disk. Each library
+     * depends on the <code>fanOut</code> libraries after it, wrapping around, so every dependency is met.
+     *
+     * @param libraryCount The number of libraries
+     * @param fanOut       The number of dependencies of each library
+     * @return The info of every library
+     */
+    public List<QllInfo> createDependentLibraries(int libraryCount, int fanOut) {
+        var libraries = new ArrayList<QllInfo>(libraryCount);
+
+        for (int i = 0; i < libraryCount; i++) {
+            var dependencies = new ArrayList<String>();
+
+            for (int j = 1; j <= Math.min(fanOut, libraryCount - 1); j++) {
+                dependencies.add("lib" + ((i + j) % libraryCount));
+            }
+
+            libraries.add(createQllInfo("lib" + i, dependencies));
+        }
+
+        return libraries;
+    }
+
+    public QllInfo createQllInfo(String name, List<String> dependencies) {
+        var dependencyList = dependencies.stream()
+                .map(dependency -> new QilletniInfoData.Dependency(dependency, ComparableVersion.parseComparableVersionString("^1.0.0").orElseThrow()))
+                .toList();
+
+        var qilletniInfo = new QilletniInfoData(name, Version.parseVersionString("1.0.0").orElseThrow(), "benchmark",
+                "A generated library", "", null, null, List.of(), List.of(), dependencyList);
+
+        return new QllInfo(qilletniInfo);
+    }
+
+    private String createQilletniInfo(String name, List<String> dependencies) {
+        var info = new StringBuilder()
+                .append("name: ").append(name).append('\n')
+                .append("version: 1.0.0\n")
+                .append("author: benchmark\n")
+                .append("description: A generated library\n");
+
+        if (!dependencies.isEmpty()) {
+            info.append("dependencies:\n");
+            dependencies.forEach(dependency -> info.append("  - ").append(dependency).append(":^1.0.0\n"));
+        }
+
+        return info.toString();
+    }
+
+    /**
+     * Creates a source of roughly the given size, made of small functions so it compresses like real sources do.
+     */
+    private String createSource(int fileIndex, int size) {
+        var source = new StringBuilder(size + 64);
+
+        for (int function = 0; source.length() < size; function++) {
+            source.append("fun function").append(fileIndex).append('_').append(function).append("(a, b) {\n")
+                    .append("    int total = a + b + ").append(random.nextInt(1000)).append("\n")
+                    .append("    return total\n")
+                    .append("}\n\n");
+        }
+
+        return source.toString();
+    }
+
+    /**
+     * Writes a jar of fake classes. Half of each class is random, so the jar compresses about as well as real classes.
+     */
+    private void writeNativeJar(Path jarPath, String name, int size) throws IOException {
+        var manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+
+        try (var jarOutputStream = new JarOutputStream(Files.newOutputStream(jarPath), manifest)) {
+            var classBytes = new byte[CLASS_SIZE];
+
+            for (int i = 0; i * CLASS_SIZE < size; i++) {
+                random.nextBytes(classBytes);
+                var repeated = "class%d%s".formatted(i, name).getBytes(StandardCharsets.UTF_8);
+
+                for (int j = CLASS_SIZE / 2; j < CLASS_SIZE; j++) {
+                    classBytes[j] = repeated[j % repeated.length];
+                }
+
+                jarOutputStream.putNextEntry(new JarEntry("dev/qilletni/benchmark/%s/Class%d.class".formatted(name, i)));
+                jarOutputStream.write(classBytes, 0, Math.min(CLASS_SIZE, size - i * CLASS_SIZE));
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * A generated library project.
+     *
+     * @param projectRoot The root of the project
+     * @param sourcePath  The <code>qilletni-src</code> directory
+     * @param nativeJar   The native jar, if the library has one
+     */
+    public record GeneratedProject(Path projectRoot, Path sourcePath, Optional<Path> nativeJar) {}
+}
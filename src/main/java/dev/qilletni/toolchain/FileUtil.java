@@ -2,8 +2,12 @@ package dev.qilletni.toolchain;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public class FileUtil {
 
@@ -21,6 +25,43 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Creates a hex SHA-256 hash of the contents of a file.
+     *
+     * @param file The file to hash
+     * @return The lowercase hex hash
+     */
+    public static String hashFile(Path file) throws IOException {
+        try (var is = Files.newInputStream(file)) {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var buffer = new byte[64 * 1024];
+
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Creates a hex SHA-256 hash of a string's UTF-8 bytes.
+     *
+     * @param content The string to hash
+     * @return The lowercase hex hash
+     */
+    public static String hashString(String content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
     public static void clearAndCreateDirectory(Path directory) {
         try {
             if (Files.exists(directory)) {
@@ -26,5 +26,25 @@ public class PathUtility {
 
         return qilletniDir;
     }
+
+    public static Path getNativeCachePath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni", "native-cache");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir;
+    }
+
+    public static Path getDaemonSocketPath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir.resolve("daemon.sock");
+    }
     
 }
@@ -2,6 +2,8 @@ package dev.qilletni.toolchain;
 
 import dev.qilletni.toolchain.command.auth.CommandAuth;
 import dev.qilletni.toolchain.command.build.CommandBuild;
+import dev.qilletni.toolchain.command.cds.CommandCds;
+import dev.qilletni.toolchain.command.daemon.CommandDaemon;
 import dev.qilletni.toolchain.command.doc.CommandDoc;
 import dev.qilletni.toolchain.command.init.CommandInit;
 import dev.qilletni.toolchain.command.persist.CommandPersist;
@@ -10,7 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
-@CommandLine.Command(name = "qilletni", version = "v1.0.0-SNAPSHOT", subcommands = {CommandAuth.class, CommandRun.class, CommandBuild.class, CommandDoc.class, CommandInit.class, CommandPersist.class})
+@CommandLine.Command(name = "qilletni", version = "v1.0.0-SNAPSHOT", subcommands = {CommandAuth.class, CommandRun.class, CommandBuild.class, CommandDoc.class, CommandInit.class, CommandPersist.class, CommandDaemon.class, CommandCds.class})
 public class QilletniToolchainApplication {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QilletniToolchainApplication.class);
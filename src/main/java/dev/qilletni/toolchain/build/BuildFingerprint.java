@@ -0,0 +1,149 @@
+package dev.qilletni.toolchain.build;
+
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.qll.QilletniSourceHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Fingerprints the inputs of a library build, so a build whose inputs haven't changed since the last build can be
+ * skipped. The inputs are every <code>.ql</code> file in <code>qilletni-src</code>, the <code>qilletni_info</code> file
+ * and the native jar.
+ */
+public class BuildFingerprint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildFingerprint.class);
+
+    /**
+     * The file in the build directory recording the last build.
+     */
+    private static final String RECORD_FILE = "qll-build.properties";
+
+    /**
+     * Changes whenever the layout of built .qll files changes, so libraries built by an older toolchain are rebuilt.
+     */
+    private static final int PACKAGE_FORMAT = 3;
+
+    private final Path buildDirectory;
+
+    /**
+     * @param buildDirectory The <code>build</code> directory of the project
+     */
+    public BuildFingerprint(Path buildDirectory) {
+        this.buildDirectory = buildDirectory;
+    }
+
+    /**
+     * Creates a fingerprint of all inputs of a build.
+     *
+     * @param sourcePath       The <code>qilletni-src</code> directory
+     * @param nativeJar        The native jar being packaged, if any
+     * @param compressionLevel The compression level the library is packaged with
+     * @return The hex fingerprint
+     */
+    public String computeFingerprint(Path sourcePath, Optional<Path> nativeJar, int compressionLevel) throws IOException {
+        var digest = createDigest();
+
+        digest.update("format:%d\n".formatted(PACKAGE_FORMAT).getBytes(StandardCharsets.UTF_8));
+        digest.update("level:%d\n".formatted(compressionLevel).getBytes(StandardCharsets.UTF_8));
+
+        var qilletniInfoFile = QilletniInfoParser.findQilletniInfoFile(sourcePath);
+        if (qilletniInfoFile.isPresent()) {
+            updateWithFile(digest, "info", qilletniInfoFile.get());
+        }
+
+        // Sorted so the fingerprint doesn't depend on the order the file system lists files in
+        for (var source : new QilletniSourceHandler().findQilletniSources(sourcePath).entrySet()) {
+            updateWithFile(digest, "src:" + source.getKey(), source.getValue());
+        }
+
+        if (nativeJar.isPresent()) {
+            updateWithFile(digest, "jar", nativeJar.get());
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Checks if the last build had the same fingerprint and wrote to the same destination, and the built file hasn't
+     * been changed since.
+     *
+     * @param fingerprint     The fingerprint of the current inputs
+     * @param destinationFile The .qll being built
+     * @return If the build may be skipped
+     */
+    public boolean isUpToDate(String fingerprint, Path destinationFile) throws IOException {
+        var recordFile = buildDirectory.resolve(RECORD_FILE);
+
+        if (Files.notExists(recordFile) || Files.notExists(destinationFile)) {
+            return false;
+        }
+
+        var properties = new Properties();
+        try (var is = Files.newInputStream(recordFile)) {
+            properties.load(is);
+        }
+
+        if (!fingerprint.equals(properties.getProperty("fingerprint"))) {
+            LOGGER.debug("Build inputs have changed since the last build");
+            return false;
+        }
+
+        if (!destinationFile.toAbsolutePath().toString().equals(properties.getProperty("output"))) {
+            LOGGER.debug("The last build was written to a different destination: {}", properties.getProperty("output"));
+            return false;
+        }
+
+        if (!FileUtil.hashFile(destinationFile).equals(properties.getProperty("output.hash"))) {
+            LOGGER.debug("The built library {} has been changed since the last build", destinationFile);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Records a finished build, so the next build can check if it's up to date.
+     *
+     * @param fingerprint     The fingerprint of the inputs of the build
+     * @param destinationFile The built .qll
+     */
+    public void recordBuild(String fingerprint, Path destinationFile) throws IOException {
+        var properties = new Properties();
+        properties.setProperty("fingerprint", fingerprint);
+        properties.setProperty("output", destinationFile.toAbsolutePath().toString());
+        properties.setProperty("output.hash", FileUtil.hashFile(destinationFile));
+
+        Files.createDirectories(buildDirectory);
+
+        try (var os = Files.newOutputStream(buildDirectory.resolve(RECORD_FILE))) {
+            properties.store(os, "Qilletni library build fingerprint");
+        }
+    }
+
+    private void updateWithFile(MessageDigest digest, String name, Path file) throws IOException {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(FileUtil.hashFile(file).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
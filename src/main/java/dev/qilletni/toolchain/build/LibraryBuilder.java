@@ -0,0 +1,294 @@
+package dev.qilletni.toolchain.build;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.PathUtility;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.qll.GradleProjectHelper;
+import dev.qilletni.toolchain.qll.QllPackageIndex;
+import dev.qilletni.toolchain.qll.QllPackager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds library projects into .qll files. Native jars are built first with {@link #buildNativeJars(List)}, which runs
+ * a single Gradle invocation for all projects sharing the same Gradle root, as Gradle locks the root's build anyway and
+ * only has to configure it once. Each library is then packaged on its own, which is safe to do for several libraries
+ * at once.
+ */
+public class LibraryBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryBuilder.class);
+
+    private final BuildOptions options;
+
+    public LibraryBuilder(BuildOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Builds the native jar of a project if it has one, and packages the project unless it is up to date.
+     *
+     * @param projectRoot The root directory of the project, containing <code>qilletni-src</code>
+     * @return The result of the build
+     */
+    public BuildResult build(Path projectRoot) throws IOException {
+        var nativeJar = buildNativeJars(List.of(projectRoot)).get(projectRoot);
+
+        if (nativeJar == null) {
+            throw new IOException("Unable to build the native jar of " + projectRoot);
+        }
+
+        return build(projectRoot, nativeJar);
+    }
+
+    /**
+     * Packages a project whose native jar has already been built, unless it is up to date.
+     *
+     * @param projectRoot The root directory of the project, containing <code>qilletni-src</code>
+     * @param nativeJar   The project's native jar from {@link #buildNativeJars(List)}, if it has one
+     * @return The result of the build
+     */
+    public BuildResult build(Path projectRoot, Optional<Path> nativeJar) throws IOException {
+        LOGGER.debug("Project root: {}", projectRoot);
+
+        var sourcePath = projectRoot.resolve("qilletni-src");
+        var buildDirectory = projectRoot.resolve("build");
+
+        var qilletniInfo = QilletniInfoParser.readQilletniInfo(sourcePath);
+
+        LOGGER.debug("Qilletni Info = {}", qilletniInfo);
+
+        var defaultQllFileName = "%s-%s.qll".formatted(qilletniInfo.name(), qilletniInfo.version().getVersionString());
+        var outputFilePath = options.outputFilePath();
+        Path destinationFile;
+
+        if (outputFilePath != null) {
+            if (outputFilePath.getFileName().toString().endsWith(".qll")) {
+                Files.createDirectories(outputFilePath.getParent());
+                destinationFile = outputFilePath;
+            } else {
+                // Is a parent directory
+                Files.createDirectories(outputFilePath);
+                destinationFile = outputFilePath.resolve(defaultQllFileName);
+            }
+        } else {
+            destinationFile = PathUtility.getDependencyPath().resolve(defaultQllFileName);
+        }
+
+        var buildFingerprint = new BuildFingerprint(buildDirectory);
+        var fingerprint = buildFingerprint.computeFingerprint(sourcePath, nativeJar, options.compressionLevel());
+
+        if (!options.forceBuild() && buildFingerprint.isUpToDate(fingerprint, destinationFile)) {
+            LOGGER.info("Library {} is up to date at {}", qilletniInfo.name(), destinationFile.toAbsolutePath());
+            return new BuildResult(qilletniInfo.name(), destinationFile, false);
+        }
+
+        LOGGER.debug("Writing package to: {}", destinationFile);
+
+        // Everything is streamed straight from the project into the .qll, without a staging directory. It's written to a
+        // temporary file first, so a run reading the installed .qll never sees a partially written one
+        var qllPackager = new QllPackager(options.compressionLevel(), options.parallelPackaging());
+        var tempFile = Files.createTempFile(destinationFile.toAbsolutePath().getParent(), "." + destinationFile.getFileName(), ".tmp");
+
+        try {
+            qllPackager.packageQll(new QllInfo(qilletniInfo), sourcePath, nativeJar, tempFile);
+
+            try {
+                Files.move(tempFile, destinationFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, destinationFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        LOGGER.info("Built library {} to {}", qilletniInfo.name(), destinationFile.toAbsolutePath());
+
+        buildFingerprint.recordBuild(fingerprint, destinationFile);
+
+        return new BuildResult(qilletniInfo.name(), destinationFile, true);
+    }
+
+    /**
+     * Updates the {@link QllPackageIndex} of the dependency directory with the libraries that were built into it, so
+     * the next run doesn't need to index them.
+     *
+     * @param destinationFiles The built .qll files
+     */
+    public void updatePackageIndex(List<Path> destinationFiles) throws IOException {
+        var dependencyPath = PathUtility.getDependencyPath().toAbsolutePath();
+
+        var installedFiles = destinationFiles.stream()
+                .map(Path::toAbsolutePath)
+                .filter(destinationFile -> dependencyPath.equals(destinationFile.getParent()))
+                .toList();
+
+        if (installedFiles.isEmpty()) {
+            return;
+        }
+
+        var packageIndex = QllPackageIndex.load(dependencyPath);
+
+        for (var installedFile : installedFiles) {
+            packageIndex.update(installedFile);
+        }
+
+        packageIndex.save();
+    }
+
+    /**
+     * Builds the native jars of projects, with one Gradle invocation for each Gradle root the projects are in. Separate
+     * Gradle roots are built at the same time.
+     *
+     * @param projectRoots The root directories of the projects
+     * @return The native jar of each project, keyed by its root directory, or empty if it has none. Projects whose
+     *         Gradle settings couldn't be read or whose jar failed to build are missing, with the cause logged
+     */
+    public Map<Path, Optional<Path>> buildNativeJars(List<Path> projectRoots) {
+        var nativeJars = new HashMap<Path, Optional<Path>>();
+        var projectHelpers = new HashMap<GradleProjectHelper, Path>();
+        var projectHelpersByRoot = new LinkedHashMap<Path, List<GradleProjectHelper>>();
+
+        for (var projectRoot : projectRoots) {
+            if (!GradleProjectHelper.isGradleProject(projectRoot)) {
+                nativeJars.put(projectRoot, Optional.empty());
+                continue;
+            }
+
+            var gradleProjectHelper = GradleProjectHelper.createProjectHelper(projectRoot, options.gradleTimeout());
+
+            if (gradleProjectHelper.isEmpty()) {
+                LOGGER.error("Unable to configure Gradle project at {}", projectRoot);
+                continue;
+            }
+
+            projectHelpers.put(gradleProjectHelper.get(), projectRoot);
+            projectHelpersByRoot.computeIfAbsent(gradleProjectHelper.get().getRootDir(), rootDir -> new ArrayList<>())
+                    .add(gradleProjectHelper.get());
+        }
+
+        var rootBuilds = new LinkedHashMap<Path, Future<Map<GradleProjectHelper, Optional<Path>>>>();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            projectHelpersByRoot.forEach((rootDir, rootHelpers) ->
+                    rootBuilds.put(rootDir, executor.submit(() -> buildGradleRoot(rootHelpers))));
+        }
+
+        rootBuilds.forEach((rootDir, rootBuild) -> {
+            try {
+                var rootJars = rootBuild.get();
+
+                for (var gradleProjectHelper : projectHelpersByRoot.get(rootDir)) {
+                    var projectRoot = projectHelpers.get(gradleProjectHelper);
+                    var nativeJar = rootJars.get(gradleProjectHelper);
+
+                    if (nativeJar == null) {
+                        LOGGER.error("The shadowJar task failed for {}", projectRoot);
+                        continue;
+                    }
+
+                    nativeJars.put(projectRoot, nativeJar);
+                }
+            } catch (ExecutionException e) {
+                LOGGER.error("Unable to build the native jars of the Gradle project at {}", rootDir, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        return nativeJars;
+    }
+
+    /**
+     * Builds the native jars of projects in the same Gradle root with a single Gradle invocation.
+     */
+    private Map<GradleProjectHelper, Optional<Path>> buildGradleRoot(List<GradleProjectHelper> projectHelpers) {
+        var verboseGradleOutput = options.verboseGradleOutput();
+        var nativeJars = new HashMap<GradleProjectHelper, Optional<Path>>();
+        var unbuiltProjects = new ArrayList<GradleProjectHelper>();
+
+        for (var gradleProjectHelper : projectHelpers) {
+            if (options.noBuildJar()) {
+                // Only build the jar if it doesn't exist yet
+                var gradleJar = gradleProjectHelper.findProjectJar(verboseGradleOutput);
+
+                if (gradleJar.isEmpty() || Files.exists(gradleJar.get())) {
+                    nativeJars.put(gradleProjectHelper, gradleJar);
+                    continue;
+                }
+
+                LOGGER.debug("Building Java .jar with shadowJar task, as it doesn't exist");
+            }
+
+            unbuiltProjects.add(gradleProjectHelper);
+        }
+
+        if (!unbuiltProjects.isEmpty()) {
+            // A single Gradle invocation both builds the jars and reports where they are
+            LOGGER.debug("Building {} Java .jar files with shadowJar tasks in {}", unbuiltProjects.size(), unbuiltProjects.getFirst().getRootDir());
+            var builtJars = GradleProjectHelper.buildProjectJars(unbuiltProjects, verboseGradleOutput);
+
+            for (var gradleProjectHelper : unbuiltProjects) {
+                var builtJar = builtJars.get(gradleProjectHelper);
+
+                // Gradle runs with --continue, so a failed shadowJar task leaves out only its own project
+                if (builtJar != null) {
+                    nativeJars.put(gradleProjectHelper, Optional.of(builtJar));
+                }
+            }
+        }
+
+        nativeJars.replaceAll((gradleProjectHelper, gradleJar) -> {
+            if (gradleJar.isEmpty()) {
+                LOGGER.info("Unable to find jar output found in Gradle project {}", gradleProjectHelper.getRootDir());
+                return Optional.empty();
+            }
+
+            LOGGER.debug("Project jar will be extracted from: {}", gradleJar);
+
+            // Package it if it's been created
+            return Files.exists(gradleJar.get()) ? gradleJar : Optional.empty();
+        });
+
+        return nativeJars;
+    }
+
+    /**
+     * The options of a build, shared by every library built.
+     *
+     * @param outputFilePath      The .qll file or directory to write to, or <code>null</code> for the dependency path
+     * @param noBuildJar          If the native jar should only be built when it doesn't exist
+     * @param forceBuild          If the library should be packaged even if it is up to date
+     * @param parallelPackaging   If entries should be compressed concurrently
+     * @param compressionLevel    The compression level of the .qll
+     * @param verboseGradleOutput If Gradle's output should be logged at info level
+     * @param gradleTimeout       The time a Gradle invocation may run for
+     */
+    public record BuildOptions(Path outputFilePath, boolean noBuildJar, boolean forceBuild, boolean parallelPackaging,
+                               int compressionLevel, boolean verboseGradleOutput, Duration gradleTimeout) {}
+
+    /**
+     * The result of building a single library.
+     *
+     * @param libraryName     The name of the library
+     * @param destinationFile The .qll of the library
+     * @param packaged        If the library was packaged, or <code>false</code> if it was already up to date
+     */
+    public record BuildResult(String libraryName, Path destinationFile, boolean packaged) {}
+}
@@ -0,0 +1,240 @@
+package dev.qilletni.toolchain.build;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.exceptions.DependencyNotMetException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Builds every library in a workspace directory. Libraries are found by their <code>qilletni-src/qilletni_info</code>
+ * files. The native jars of every library are built first, with one Gradle invocation for each Gradle root. Each
+ * library is then packaged once all libraries in the workspace it depends on have been built. Libraries that don't
+ * depend on each other are packaged in parallel, up to a limit.
+ */
+public class WorkspaceBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkspaceBuilder.class);
+
+    /**
+     * Directories never searched for libraries, as they only hold build outputs or tooling state.
+     */
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of("build", "node_modules", "out", "target");
+
+    private final LibraryBuilder libraryBuilder;
+    private final int jobs;
+
+    /**
+     * @param libraryBuilder The builder of each library
+     * @param jobs           The maximum number of libraries built at once
+     */
+    public WorkspaceBuilder(LibraryBuilder libraryBuilder, int jobs) {
+        this.libraryBuilder = libraryBuilder;
+        this.jobs = jobs;
+    }
+
+    /**
+     * Finds every library project under a directory.
+     *
+     * @param workspaceRoot The directory to search
+     * @return The libraries found, sorted by name
+     */
+    public List<WorkspaceLibrary> findLibraries(Path workspaceRoot) throws IOException {
+        var libraries = new ArrayList<WorkspaceLibrary>();
+
+        Files.walkFileTree(workspaceRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                var directoryName = dir.getFileName() == null ? "" : dir.getFileName().toString();
+
+                if (!dir.equals(workspaceRoot) && (directoryName.startsWith(".") || SKIPPED_DIRECTORIES.contains(directoryName))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                if (directoryName.equals("qilletni-src")) {
+                    if (QilletniInfoParser.findQilletniInfoFile(dir).isPresent()) {
+                        var projectRoot = dir.getParent() == null ? workspaceRoot : dir.getParent();
+                        libraries.add(new WorkspaceLibrary(projectRoot, QilletniInfoParser.readQilletniInfo(dir)));
+                    }
+
+                    // Sources never contain other libraries
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        libraries.sort(Comparator.comparing(library -> library.qilletniInfo().name()));
+
+        return libraries;
+    }
+
+    /**
+     * Builds all given libraries, each after the workspace libraries it depends on. If a library fails to build, the
+     * libraries depending on it are skipped, but every other library is still built.
+     *
+     * @param libraries The libraries of the workspace
+     * @return The built and failed libraries
+     * @throws DependencyNotMetException If two libraries share a name, or the libraries depend on each other in a cycle
+     */
+    public WorkspaceResult buildAll(List<WorkspaceLibrary> libraries) {
+        var librariesByName = new HashMap<String, WorkspaceLibrary>();
+
+        for (var library : libraries) {
+            var existing = librariesByName.put(library.qilletniInfo().name(), library);
+
+            if (existing != null) {
+                throw new DependencyNotMetException("Library %s is in the workspace twice, at %s and %s".formatted(library.qilletniInfo().name(), existing.projectRoot(), library.projectRoot()));
+            }
+        }
+
+        var buildOrder = createBuildOrder(librariesByName);
+
+        LOGGER.info("Building {} libraries with up to {} at once: {}", buildOrder.size(), jobs, buildOrder.stream().map(library -> library.qilletniInfo().name()).toList());
+
+        var nativeJars = libraryBuilder.buildNativeJars(buildOrder.stream().map(WorkspaceLibrary::projectRoot).toList());
+
+        var permits = new Semaphore(jobs);
+        var builds = new HashMap<String, CompletableFuture<LibraryBuilder.BuildResult>>();
+        var results = new ArrayList<LibraryBuilder.BuildResult>();
+        var failed = new ArrayList<String>();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // The build order puts every library after its dependencies, so their futures already exist
+            for (var library : buildOrder) {
+                var dependencyBuilds = getWorkspaceDependencies(library, librariesByName).stream()
+                        .map(builds::get)
+                        .toArray(CompletableFuture[]::new);
+
+                var build = CompletableFuture.allOf(dependencyBuilds)
+                        .thenApplyAsync(ignored -> buildLibrary(library, nativeJars.get(library.projectRoot()), permits), executor);
+
+                builds.put(library.qilletniInfo().name(), build);
+            }
+
+            for (var library : buildOrder) {
+                var name = library.qilletniInfo().name();
+
+                try {
+                    results.add(builds.get(name).join());
+                } catch (CompletionException e) {
+                    // Dependencies come first in the build order, so they have already been checked
+                    if (getWorkspaceDependencies(library, librariesByName).stream().anyMatch(failed::contains)) {
+                        LOGGER.error("Skipped {}, as a library it depends on failed to build", name);
+                    } else {
+                        LOGGER.error("Failed to build {} at {}", name, library.projectRoot(), e.getCause());
+                    }
+
+                    failed.add(name);
+                }
+            }
+        }
+
+        return new WorkspaceResult(results, failed);
+    }
+
+    private LibraryBuilder.BuildResult buildLibrary(WorkspaceLibrary library, Optional<Path> nativeJar, Semaphore permits) {
+        if (nativeJar == null) {
+            throw new CompletionException(new IOException("Unable to build the native jar of " + library.projectRoot()));
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        try {
+            LOGGER.info("Building {} at {}", library.qilletniInfo().name(), library.projectRoot());
+            return libraryBuilder.build(library.projectRoot(), nativeJar);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Orders the libraries so that each comes after the workspace libraries it depends on. Dependencies outside the
+     * workspace are ignored, as they are already installed.
+     */
+    private List<WorkspaceLibrary> createBuildOrder(Map<String, WorkspaceLibrary> librariesByName) {
+        var buildOrder = new ArrayList<WorkspaceLibrary>(librariesByName.size());
+        var visited = new HashSet<String>();
+        var visiting = new ArrayList<String>();
+
+        librariesByName.keySet().stream().sorted().forEach(name -> visit(name, librariesByName, visited, visiting, buildOrder));
+
+        return buildOrder;
+    }
+
+    private void visit(String name, Map<String, WorkspaceLibrary> librariesByName, Set<String> visited, List<String> visiting, List<WorkspaceLibrary> buildOrder) {
+        if (visited.contains(name)) {
+            return;
+        }
+
+        var cycleStart = visiting.indexOf(name);
+        if (cycleStart != -1) {
+            var cycle = new ArrayList<>(visiting.subList(cycleStart, visiting.size()));
+            cycle.add(name);
+
+            throw new DependencyNotMetException("Dependency cycle found in the workspace: " + String.join(" -> ", cycle));
+        }
+
+        var library = librariesByName.get(name);
+        visiting.add(name);
+
+        getWorkspaceDependencies(library, librariesByName).stream()
+                .sorted()
+                .forEach(dependency -> visit(dependency, librariesByName, visited, visiting, buildOrder));
+
+        visiting.removeLast();
+        visited.add(name);
+        buildOrder.add(library);
+    }
+
+    private List<String> getWorkspaceDependencies(WorkspaceLibrary library, Map<String, WorkspaceLibrary> librariesByName) {
+        return library.qilletniInfo().dependencies().stream()
+                .map(QilletniInfoData.Dependency::name)
+                .filter(librariesByName::containsKey)
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * A library project found in the workspace.
+     *
+     * @param projectRoot  The root directory of the project
+     * @param qilletniInfo The project's info
+     */
+    public record WorkspaceLibrary(Path projectRoot, QilletniInfoData qilletniInfo) {}
+
+    /**
+     * The outcome of building a workspace.
+     *
+     * @param results The results of every library built successfully, in build order
+     * @param failed  The names of libraries that failed or were skipped because a dependency failed
+     */
+    public record WorkspaceResult(List<LibraryBuilder.BuildResult> results, List<String> failed) {}
+}
@@ -0,0 +1,234 @@
+package dev.qilletni.toolchain.cds;
+
+import dev.qilletni.toolchain.QilletniToolchainApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and measures a dynamic class data sharing (AppCDS) archive of the toolchain jar. The archive holds the
+ * already parsed and verified classes loaded by a training run, so later JVMs started with it map them in instead of
+ * loading them from the jar again.
+ * <br><br>
+ * An archive only works with the exact jar and JVM it was created with. The <code>qilletni</code> script only uses it
+ * while it is newer than the jar, and the JVM itself ignores an archive that doesn't match.
+ */
+public class CdsArchive {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CdsArchive.class);
+
+    /**
+     * Silences the JVM's warnings about an archive it can't use, as it then simply starts without it.
+     */
+    private static final List<String> QUIET_CDS_OPTIONS = List.of("-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off");
+
+    private final Path toolchainJar;
+    private final Path archivePath;
+    private final Path javaExecutable;
+
+    /**
+     * @param toolchainJar The toolchain jar the archive is for
+     * @param archivePath  The archive file
+     */
+    public CdsArchive(Path toolchainJar, Path archivePath) {
+        this.toolchainJar = toolchainJar;
+        this.archivePath = archivePath;
+        this.javaExecutable = Path.of(System.getProperty("java.home"), "bin", "java");
+    }
+
+    /**
+     * Finds the jar the toolchain is running from.
+     *
+     * @return The toolchain jar, or empty if the toolchain isn't running from a jar (such as from an IDE)
+     */
+    public static Optional<Path> findToolchainJar() {
+        try {
+            var codeSource = QilletniToolchainApplication.class.getProtectionDomain().getCodeSource();
+
+            if (codeSource == null) {
+                return Optional.empty();
+            }
+
+            var location = Path.of(codeSource.getLocation().toURI());
+
+            if (!Files.isRegularFile(location) || !location.getFileName().toString().endsWith(".jar")) {
+                return Optional.empty();
+            }
+
+            return Optional.of(location);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOGGER.debug("Unable to find the toolchain jar", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the archive next to a jar, which is where the <code>qilletni</code> script looks for it.
+     *
+     * @param toolchainJar The toolchain jar
+     * @return The default archive path of the jar
+     */
+    public static Path getDefaultArchivePath(Path toolchainJar) {
+        var jarName = toolchainJar.getFileName().toString();
+        return toolchainJar.resolveSibling(jarName.substring(0, jarName.length() - ".jar".length()) + ".jsa");
+    }
+
+    /**
+     * @return The archive file
+     */
+    public Path getArchivePath() {
+        return archivePath;
+    }
+
+    /**
+     * Creates the archive from a training run of the toolchain. Every class loaded by the training run is dumped to
+     * the archive when its JVM exits. The previous archive is only replaced once the new one has been created.
+     *
+     * @param trainingCommand The arguments of the toolchain command to train with
+     * @param showOutput      If the output of the training run should be shown
+     * @return If the archive was created
+     */
+    public boolean create(List<String> trainingCommand, boolean showOutput) throws IOException, InterruptedException {
+        var temporaryArchive = archivePath.resolveSibling(archivePath.getFileName() + ".tmp");
+
+        try {
+            Files.deleteIfExists(temporaryArchive);
+
+            LOGGER.info("Training run: qilletni {}", String.join(" ", trainingCommand));
+
+            var exitCode = runToolchain(List.of("-XX:ArchiveClassesAtExit=" + temporaryArchive), trainingCommand, showOutput);
+
+            // The archive is still dumped if the command itself failed, so only its absence is an error
+            if (exitCode != 0) {
+                LOGGER.warn("Training run exited with code {}", exitCode);
+            }
+
+            if (Files.notExists(temporaryArchive)) {
+                LOGGER.error("The JVM didn't create an archive, run with --verbose to see its output");
+                return false;
+            }
+
+            Files.move(temporaryArchive, archivePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(temporaryArchive);
+        }
+    }
+
+    /**
+     * Measures how long the toolchain takes to run a command, with and without the archive.
+     *
+     * @param command    The arguments of the toolchain command to run
+     * @param iterations The number of times to run it each way
+     * @return The measurement
+     */
+    public Measurement measure(List<String> command, int iterations) throws IOException, InterruptedException {
+        var withoutArchive = List.<String>of();
+        var withArchive = new ArrayList<String>();
+        withArchive.add("-XX:SharedArchiveFile=" + archivePath);
+        withArchive.addAll(QUIET_CDS_OPTIONS);
+
+        // The first runs only warm the OS' file cache, so neither side pays for reading the jar from disk
+        runToolchain(withoutArchive, command, false);
+        runToolchain(withArchive, command, false);
+
+        var timesWithout = new long[iterations];
+        var timesWith = new long[iterations];
+
+        // Alternating runs keeps anything else happening on the machine from only affecting one side
+        for (int i = 0; i < iterations; i++) {
+            timesWithout[i] = timeToolchain(withoutArchive, command);
+            timesWith[i] = timeToolchain(withArchive, command);
+        }
+
+        return new Measurement(command, Timing.of(timesWithout), Timing.of(timesWith));
+    }
+
+    private long timeToolchain(List<String> jvmOptions, List<String> command) throws IOException, InterruptedException {
+        var startTime = System.nanoTime();
+        runToolchain(jvmOptions, command, false);
+        return System.nanoTime() - startTime;
+    }
+
+    private int runToolchain(List<String> jvmOptions, List<String> command, boolean showOutput) throws IOException, InterruptedException {
+        var processCommand = new ArrayList<String>();
+        processCommand.add(javaExecutable.toString());
+        processCommand.addAll(jvmOptions);
+        processCommand.add("-jar");
+        processCommand.add(toolchainJar.toString());
+        processCommand.addAll(command);
+
+        LOGGER.debug("Running {}", processCommand);
+
+        var processBuilder = new ProcessBuilder(processCommand);
+
+        if (showOutput) {
+            processBuilder.inheritIO();
+        } else {
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD);
+        }
+
+        var process = processBuilder.start();
+
+        // Nothing is written to the toolchain, so anything reading stdin sees its end right away
+        process.getOutputStream().close();
+
+        return process.waitFor();
+    }
+
+    /**
+     * The startup times of a command with and without the archive.
+     *
+     * @param command        The arguments of the toolchain command that was run
+     * @param withoutArchive The times without the archive
+     * @param withArchive    The times with the archive
+     */
+    public record Measurement(List<String> command, Timing withoutArchive, Timing withArchive) {
+
+        /**
+         * @return How much faster the median run with the archive was, as a percentage
+         */
+        public double getSpeedupPercent() {
+            return 100.0 * (withoutArchive.medianNanos() - withArchive.medianNanos()) / withoutArchive.medianNanos();
+        }
+    }
+
+    /**
+     * The wall clock times of several runs of a command.
+     *
+     * @param minNanos    The fastest run
+     * @param medianNanos The median run
+     * @param maxNanos    The slowest run
+     */
+    public record Timing(long minNanos, long medianNanos, long maxNanos) {
+        static Timing of(long[] times) {
+            var sorted = times.clone();
+            Arrays.sort(sorted);
+
+            return new Timing(sorted[0], sorted[sorted.length / 2], sorted[sorted.length - 1]);
+        }
+
+        public long minMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(minNanos);
+        }
+
+        public long medianMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(medianNanos);
+        }
+
+        public long maxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+    }
+}
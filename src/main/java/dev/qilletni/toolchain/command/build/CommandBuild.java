@@ -1,21 +1,17 @@
 package dev.qilletni.toolchain.command.build;
 
-import dev.qilletni.api.lib.qll.QllInfo;
-import dev.qilletni.toolchain.FileUtil;
 import dev.qilletni.toolchain.LogSetup;
-import dev.qilletni.toolchain.PathUtility;
-import dev.qilletni.toolchain.config.QilletniInfoParser;
-import dev.qilletni.toolchain.qll.GradleProjectHelper;
-import dev.qilletni.toolchain.qll.QilletniSourceHandler;
-import dev.qilletni.toolchain.qll.QllInfoGenerator;
-import dev.qilletni.toolchain.qll.QllPackager;
+import dev.qilletni.toolchain.build.LibraryBuilder;
+import dev.qilletni.toolchain.build.WorkspaceBuilder;
+import dev.qilletni.toolchain.exceptions.DependencyNotMetException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "build", description = "Build a Qilletni library")
@@ -26,7 +22,7 @@ public class CommandBuild implements Callable<Integer> {
     @CommandLine.Option(names = { "-h", "--help" }, usageHelp = true, description = "Display a help message")
     private boolean helpRequested = false;
 
-    @CommandLine.Parameters(description = "The root directory of the project", index = "0", defaultValue = ".")
+    @CommandLine.Parameters(description = "The root directory of the project, or of the workspace with --workspace", index = "0", defaultValue = ".")
     public Path projectRoot;
 
     // Ends in .qll: use as file. Otherwise, use as a destination directory
@@ -36,6 +32,24 @@ public class CommandBuild implements Callable<Integer> {
     @CommandLine.Option(names = {"--no-build-jar", "-n"}, description = "Qilletni should not rebuild build the native .jar")
     public boolean noBuildJar;
     
+    @CommandLine.Option(names = {"--force", "-f"}, description = "Package the library even if nothing has changed since the last build")
+    public boolean forceBuild;
+    
+    @CommandLine.Option(names = {"--workspace", "-w"}, description = "Build every library found under the project root, in dependency order")
+    public boolean workspace;
+
+    @CommandLine.Option(names = {"--jobs"}, defaultValue = "0", description = "The number of libraries built at once in a workspace build, defaulting to the number of cores")
+    public int jobs;
+
+    @CommandLine.Option(names = {"--parallel"}, description = "Compress the library's files concurrently across all cores")
+    public boolean parallelPackaging;
+
+    @CommandLine.Option(names = {"--compression-level"}, defaultValue = "-1", description = "The compression level of the .qll from 0 (none) to 9 (best), or -1 for the default")
+    public int compressionLevel;
+
+    @CommandLine.Option(names = {"--gradle-timeout"}, defaultValue = "60", description = "The number of seconds a Gradle task may run before it is stopped")
+    public long gradleTimeoutSeconds;
+
     @CommandLine.Option(names = {"--verbose", "-v"}, description = "Verbose Gradle output")
     public boolean verboseGradleOutput;
 
@@ -48,78 +62,75 @@ public class CommandBuild implements Callable<Integer> {
             LogSetup.setupLogSocket(logPort);
         }
 
-        LOGGER.debug("Called build! {}", this);
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            LOGGER.error("Invalid compression level {}, it must be from 0 to 9, or -1 for the default", compressionLevel);
+            return 1;
+        }
 
-        LOGGER.debug("Project root: {}", projectRoot);
+        if (gradleTimeoutSeconds < 1) {
+            LOGGER.error("Invalid Gradle timeout {}, it must be at least 1 second", gradleTimeoutSeconds);
+            return 1;
+        }
 
-        LOGGER.debug("Output file/directory: {}", outputFilePath);
+        LOGGER.debug("Called build! {}", this);
 
-        var sourcePath = projectRoot.resolve("qilletni-src");
-        var buildDirectory = projectRoot.resolve("build");
+        LOGGER.debug("Output file/directory: {}", outputFilePath);
 
-        var qilletniInfo = QilletniInfoParser.readQilletniInfo(sourcePath);
+        var buildOptions = new LibraryBuilder.BuildOptions(outputFilePath, noBuildJar, forceBuild, parallelPackaging,
+                compressionLevel, verboseGradleOutput, Duration.ofSeconds(gradleTimeoutSeconds));
+        var libraryBuilder = new LibraryBuilder(buildOptions);
 
-        LOGGER.debug("Qilletni Info = {}", qilletniInfo);
+        if (workspace) {
+            return buildWorkspace(libraryBuilder);
+        }
 
-        var qilletniSourceHandler = new QilletniSourceHandler();
+        var buildResult = libraryBuilder.build(projectRoot);
 
-        var qllBuildPath = buildDirectory.resolve("ql-build");
+        if (buildResult.packaged()) {
+            libraryBuilder.updatePackageIndex(List.of(buildResult.destinationFile()));
+        }
 
-        FileUtil.clearAndCreateDirectory(qllBuildPath);
+        return 0;
+    }
 
-        if (GradleProjectHelper.isGradleProject(projectRoot)) {
-            var gradleProjectHelper = GradleProjectHelper.createProjectHelper(projectRoot).orElseThrow(() -> new RuntimeException("Unable to configure Gradle project"));
-            var gradleJarOptional = gradleProjectHelper.findProjectJar(verboseGradleOutput);
-            
-            if (gradleJarOptional.isPresent()) {
-                LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
+    private int buildWorkspace(LibraryBuilder libraryBuilder) throws IOException {
+        if (outputFilePath != null && outputFilePath.getFileName().toString().endsWith(".qll")) {
+            LOGGER.error("The output of a workspace build must be a directory");
+            return 1;
+        }
 
-                var gradleJar = gradleJarOptional.get();
+        var workspaceJobs = jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors();
+        var workspaceBuilder = new WorkspaceBuilder(libraryBuilder, workspaceJobs);
 
-                // Build the jar if it doesn't exist, or if it's not told to NOT rebuild
-                if (!Files.exists(gradleJar) || !noBuildJar) {
-                    LOGGER.debug("Building Java .jar with shadowJar task");
-                    gradleProjectHelper.runShadowJarTask(verboseGradleOutput);
-                }
+        var libraries = workspaceBuilder.findLibraries(projectRoot);
 
-                // Copy it if it's been created
-                if (Files.exists(gradleJar)) {
-                    Files.copy(gradleJar, qllBuildPath.resolve("native.jar"));
-                }
-            } else {
-                LOGGER.info("Unable to find jar output found in Gradle project");
-            }
+        if (libraries.isEmpty()) {
+            LOGGER.error("No libraries found in {}", projectRoot.toAbsolutePath());
+            return 1;
         }
 
-        qilletniSourceHandler.moveQilletniSource(qllBuildPath, sourcePath);
-
-        var qllInfoGenerator = new QllInfoGenerator();
-        qllInfoGenerator.writeQllInfo(new QllInfo(qilletniInfo), qllBuildPath);
-
-        var defaultQllFileName = "%s-%s.qll".formatted(qilletniInfo.name(), qilletniInfo.version().getVersionString());
-        Path destinationFile;
-
-        if (outputFilePath != null) {
-            if (outputFilePath.getFileName().toString().endsWith(".qll")) {
-                Files.createDirectories(outputFilePath.getParent());
-                Files.deleteIfExists(outputFilePath);
-                destinationFile = outputFilePath;
-            } else {
-                // Is a parent directory
-                Files.createDirectories(outputFilePath);
-                destinationFile = outputFilePath.resolve(defaultQllFileName);
-            }
-        } else {
-            destinationFile = PathUtility.getDependencyPath().resolve(defaultQllFileName);;
-        }
+        WorkspaceBuilder.WorkspaceResult workspaceResult;
 
-        LOGGER.debug("Writing package to: {}", destinationFile);
+        try {
+            workspaceResult = workspaceBuilder.buildAll(libraries);
+        } catch (DependencyNotMetException e) {
+            LOGGER.error(e.getMessage());
+            return 1;
+        }
 
-        var qllPackager = new QllPackager();
+        // Every library is already installed, the index is only updated once they're all done
+        libraryBuilder.updatePackageIndex(workspaceResult.results().stream()
+                .filter(LibraryBuilder.BuildResult::packaged)
+                .map(LibraryBuilder.BuildResult::destinationFile)
+                .toList());
 
-        qllPackager.packageQll(qllBuildPath, destinationFile);
+        var packagedCount = workspaceResult.results().stream().filter(LibraryBuilder.BuildResult::packaged).count();
+        LOGGER.info("Built {} libraries, {} were up to date", packagedCount, workspaceResult.results().size() - packagedCount);
 
-        LOGGER.info("Built library to {}", destinationFile.toAbsolutePath());
+        if (!workspaceResult.failed().isEmpty()) {
+            LOGGER.error("Failed to build: {}", String.join(", ", workspaceResult.failed()));
+            return 1;
+        }
 
         return 0;
     }
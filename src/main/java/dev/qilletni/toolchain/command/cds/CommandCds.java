@@ -0,0 +1,119 @@
+package dev.qilletni.toolchain.command.cds;
+
+import dev.qilletni.toolchain.cds.CdsArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "cds", description = "Create a class data sharing archive from a training run, which the qilletni script uses to start faster")
+public class CommandCds implements Callable<Integer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandCds.class);
+
+    @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display a help message")
+    private boolean helpRequested = false;
+
+    @CommandLine.Option(names = {"--output-file", "-o"}, description = "The archive to create, defaulting to the toolchain jar's name with .jsa next to it")
+    private Path archivePath;
+
+    @CommandLine.Option(names = {"--program"}, description = "The .ql program run to train the archive, defaulting to an empty program that only loads the installed libraries")
+    private Path trainingProgram;
+
+    @CommandLine.Option(names = {"--measure", "-m"}, description = "Measure startup times with and without the existing archive instead of creating it")
+    private boolean measure;
+
+    @CommandLine.Option(names = {"--iterations"}, defaultValue = "5", description = "The number of times each command is run when measuring")
+    private int iterations;
+
+    @CommandLine.Option(names = {"--verbose", "-v"}, description = "Show the output of the training run")
+    private boolean verbose;
+
+    @Override
+    public Integer call() throws IOException, InterruptedException {
+        var toolchainJar = CdsArchive.findToolchainJar();
+
+        if (toolchainJar.isEmpty()) {
+            LOGGER.error("The toolchain isn't running from a jar, so there's nothing to archive");
+            return 1;
+        }
+
+        if (archivePath == null) {
+            archivePath = CdsArchive.getDefaultArchivePath(toolchainJar.get());
+        }
+
+        var cdsArchive = new CdsArchive(toolchainJar.get(), archivePath.toAbsolutePath());
+
+        if (trainingProgram != null && Files.notExists(trainingProgram)) {
+            LOGGER.error("Training program {} does not exist!", trainingProgram.toAbsolutePath());
+            return 1;
+        }
+
+        var program = trainingProgram != null ? trainingProgram.toAbsolutePath() : Files.createTempFile("ql-cds", ".ql");
+
+        try {
+            return measure ? measureArchive(cdsArchive, program) : createArchive(cdsArchive, program);
+        } finally {
+            if (trainingProgram == null) {
+                Files.deleteIfExists(program);
+            }
+        }
+    }
+
+    private int createArchive(CdsArchive cdsArchive, Path program) throws IOException, InterruptedException {
+        if (!cdsArchive.create(List.of("run", program.toString()), verbose)) {
+            return 1;
+        }
+
+        LOGGER.info("Created class data sharing archive {} ({} KiB)", cdsArchive.getArchivePath(), Files.size(cdsArchive.getArchivePath()) / 1024);
+        return 0;
+    }
+
+    private int measureArchive(CdsArchive cdsArchive, Path program) throws IOException, InterruptedException {
+        if (Files.notExists(cdsArchive.getArchivePath())) {
+            LOGGER.error("No archive found at {}, create it with qilletni cds first", cdsArchive.getArchivePath());
+            return 1;
+        }
+
+        if (iterations < 1) {
+            LOGGER.error("Invalid number of iterations {}, it must be at least 1", iterations);
+            return 1;
+        }
+
+        // Printing the version is the least the toolchain can do, so it shows the startup time on its own
+        var commands = List.of(List.of("--version"), List.of("run", program.toString()));
+        var measurements = new ArrayList<CdsArchive.Measurement>();
+
+        for (var command : commands) {
+            LOGGER.info("Measuring qilletni {} ({} runs each)", String.join(" ", command), iterations);
+            measurements.add(cdsArchive.measure(command, iterations));
+        }
+
+        for (var measurement : measurements) {
+            var withoutArchive = measurement.withoutArchive();
+            var withArchive = measurement.withArchive();
+
+            LOGGER.info("qilletni {}", String.join(" ", measurement.command()));
+            LOGGER.info("  Without archive: median {} ms (min {} ms, max {} ms)", withoutArchive.medianMillis(), withoutArchive.minMillis(), withoutArchive.maxMillis());
+            LOGGER.info("  With archive:    median {} ms (min {} ms, max {} ms)", withArchive.medianMillis(), withArchive.minMillis(), withArchive.maxMillis());
+            LOGGER.info("  Speedup:         {}%", "%.1f".formatted(measurement.getSpeedupPercent()));
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandCdsArgs{" +
+                "helpRequested=" + helpRequested +
+                ", archivePath=" + archivePath +
+                ", measure=" + measure +
+                '}';
+    }
+}
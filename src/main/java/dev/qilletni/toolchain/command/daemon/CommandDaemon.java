@@ -0,0 +1,83 @@
+package dev.qilletni.toolchain.command.daemon;
+
+import dev.qilletni.toolchain.PathUtility;
+import dev.qilletni.toolchain.daemon.DaemonClient;
+import dev.qilletni.toolchain.daemon.DaemonServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "daemon", description = "Keeps the toolchain running in the background, executing run, build and doc commands sent by the qilletni script")
+public class CommandDaemon implements Callable<Integer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandDaemon.class);
+
+    @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display a help message")
+    private boolean helpRequested = false;
+
+    @CommandLine.Option(names = {"--socket", "-s"}, description = "The Unix domain socket to listen on, defaulting to ~/.qilletni/daemon.sock")
+    private Path socketPath;
+
+    @CommandLine.Option(names = {"--stop"}, description = "Stop the running daemon once its current command has finished")
+    private boolean stop;
+
+    @Override
+    public Integer call() throws IOException {
+        if (socketPath == null) {
+            socketPath = PathUtility.getDaemonSocketPath();
+        }
+
+        if (stop) {
+            return stopDaemon();
+        }
+
+        try (var daemonServer = DaemonServer.bind(socketPath)) {
+            // Ctrl+C or a kill shouldn't leave the socket file behind
+            var shutdownHook = new Thread(() -> {
+                try {
+                    daemonServer.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to remove daemon socket {}", socketPath, e);
+                }
+            });
+
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            daemonServer.serve();
+
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+
+        return 0;
+    }
+
+    private int stopDaemon() throws IOException {
+        if (!DaemonClient.isListening(socketPath)) {
+            LOGGER.error("No daemon is listening on {}", socketPath);
+            return 1;
+        }
+
+        var exitCode = DaemonClient.stop(socketPath);
+
+        if (exitCode.isEmpty()) {
+            LOGGER.error("Daemon closed the connection without stopping");
+            return 1;
+        }
+
+        LOGGER.info("Stopped daemon listening on {}", socketPath);
+        return exitCode.getAsInt();
+    }
+
+    @Override
+    public String toString() {
+        return "CommandDaemonArgs{" +
+                "helpRequested=" + helpRequested +
+                ", socketPath=" + socketPath +
+                ", stop=" + stop +
+                '}';
+    }
+}
@@ -1,13 +1,17 @@
 package dev.qilletni.toolchain.command.doc;
 
 import dev.qilletni.toolchain.PathUtility;
-import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.docs.DocManifest;
 import dev.qilletni.toolchain.docs.DocumentationOrchestrator;
+import dev.qilletni.toolchain.docs.QllDocSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "doc", description = "Generated HTML docs for Qilletni")
@@ -18,7 +22,7 @@ public class CommandDoc implements Callable<Integer> {
     @CommandLine.Option(names = { "-h", "--help" }, usageHelp = true, description = "Display a help message")
     private boolean helpRequested = false;
 
-    @CommandLine.Parameters(description = "The directory that contains source Qilletni .ql files, and a qilletni_info.yml", index = "0")
+    @CommandLine.Parameters(description = "The directory that contains source Qilletni .ql files, and a qilletni_info.yml. This may instead be a built .qll, or the name of an installed library", index = "0", arity = "0..1")
     public Path sourcePath;
 
     @CommandLine.Option(names = {"--output-file", "-o"}, description = "The directory to put the generated docs in")
@@ -26,6 +30,21 @@ public class CommandDoc implements Callable<Integer> {
 
     @CommandLine.Option(names = {"--cache-path", "-c"}, description = "The directory containing the cache of the docs")
     public Path cachePath;
+
+    @CommandLine.Option(names = {"--manifest", "-m"}, description = "A manifest of libraries to generate docs for together, in the format of allowed_releases.json")
+    public Path manifestPath;
+
+    @CommandLine.Option(names = {"--checkouts"}, description = "The directory containing the manifest's repositories as owner/repo directories, defaulting to the manifest's directory")
+    public Path checkoutsPath;
+
+    @CommandLine.Option(names = {"--jobs", "-j"}, description = "The number of libraries from the manifest to generate docs for at once, defaulting to the number of processors")
+    public int jobs = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--force", "-f"}, description = "Generate the docs even if no source has changed since they were last generated")
+    public boolean force;
+
+    @CommandLine.Option(names = {"--no-optimize"}, description = "Don't fingerprint asset names or write precompressed .gz files for serving the docs")
+    public boolean noOptimize;
     
     @Override
     public Integer call() throws Exception {
@@ -37,10 +56,97 @@ public class CommandDoc implements Callable<Integer> {
         }
         
         LOGGER.debug("Cache path: {}", cachePath);
-        
-        var qilletniInfo = QilletniInfoParser.readQilletniInfo(sourcePath);
 
-        var documentationOrchestrator = new DocumentationOrchestrator();
-        return documentationOrchestrator.beginDocGen(qilletniInfo, cachePath, sourcePath, outputFilePath);
+        if (manifestPath != null) {
+            if (sourcePath != null) {
+                LOGGER.error("Either a source directory or a --manifest must be given, not both");
+                return 1;
+            }
+
+            return generateFromManifest();
+        }
+
+        if (sourcePath == null) {
+            LOGGER.error("A source directory or a --manifest must be given");
+            return 1;
+        }
+
+        if (Files.isDirectory(sourcePath)) {
+            var documentationOrchestrator = new DocumentationOrchestrator(force, !noOptimize);
+            return documentationOrchestrator.beginDocGen(DocumentationOrchestrator.DocLibrary.fromSourceDirectory(sourcePath), cachePath, outputFilePath);
+        }
+
+        return generateFromQll();
+    }
+
+    /**
+     * Generates docs from the sources in a .qll, which is either the given file or the newest installed version of
+     * the library named by the source path.
+     */
+    private int generateFromQll() throws IOException {
+        var qllPath = sourcePath;
+
+        if (!Files.isRegularFile(qllPath)) {
+            // Only the last name is used, as the daemon resolves the argument against the client's directory
+            var libraryName = sourcePath.getFileName().toString();
+            var installedQll = QllDocSource.findInstalled(PathUtility.getDependencyPath(), libraryName);
+
+            if (installedQll.isEmpty()) {
+                LOGGER.error("{} is not a source directory, .qll or installed library", sourcePath);
+                return 1;
+            }
+
+            qllPath = installedQll.get();
+        }
+
+        LOGGER.debug("Generating docs from library {}", qllPath);
+
+        try (var qllDocSource = QllDocSource.open(qllPath)) {
+            var documentationOrchestrator = new DocumentationOrchestrator(force, !noOptimize);
+            return documentationOrchestrator.beginDocGen(DocumentationOrchestrator.DocLibrary.fromQll(qllDocSource), cachePath, outputFilePath);
+        }
+    }
+
+    private int generateFromManifest() {
+        if (jobs < 1) {
+            LOGGER.error("Invalid number of jobs {}, it must be at least 1", jobs);
+            return 1;
+        }
+
+        DocManifest manifest;
+
+        try {
+            manifest = DocManifest.read(manifestPath);
+        } catch (IOException e) {
+            LOGGER.error("Unable to read doc manifest {}", manifestPath.toAbsolutePath(), e);
+            return 1;
+        }
+
+        var checkoutRoot = checkoutsPath != null ? checkoutsPath : manifestPath.toAbsolutePath().getParent();
+        var libraries = new ArrayList<DocumentationOrchestrator.DocLibrary>();
+
+        // Every library is checked before any docs are generated, so a bad manifest doesn't leave half updated docs
+        for (var release : manifest.releases()) {
+            var librarySourcePath = release.resolveSourcePath(checkoutRoot);
+
+            if (!Files.isDirectory(librarySourcePath)) {
+                LOGGER.error("Source directory {} of {} does not exist!", librarySourcePath, release.name());
+                return 1;
+            }
+
+            try {
+                libraries.add(DocumentationOrchestrator.DocLibrary.fromSourceDirectory(librarySourcePath));
+            } catch (IOException e) {
+                LOGGER.error("Unable to read qilletni_info.yml of {}", release.name(), e);
+                return 1;
+            }
+        }
+
+        if (libraries.isEmpty()) {
+            LOGGER.error("Doc manifest {} has no releases", manifestPath.toAbsolutePath());
+            return 1;
+        }
+
+        return new DocumentationOrchestrator(force, !noOptimize).beginBatchDocGen(libraries, cachePath, outputFilePath, jobs);
     }
 }
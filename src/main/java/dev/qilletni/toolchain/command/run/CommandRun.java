@@ -1,27 +1,51 @@
 package dev.qilletni.toolchain.command.run;
 
 import dev.qilletni.api.exceptions.QilletniException;
+import dev.qilletni.api.lib.qll.QilletniInfoData;
 import dev.qilletni.api.lib.qll.QllInfo;
 import dev.qilletni.impl.ServiceManager;
 import dev.qilletni.impl.lang.runner.QilletniProgramRunner;
 import dev.qilletni.impl.lib.LibrarySourceFileResolver;
+import dev.qilletni.toolchain.FileUtil;
 import dev.qilletni.toolchain.LogSetup;
 import dev.qilletni.toolchain.PathUtility;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.exceptions.DependencyNotMetException;
+import dev.qilletni.toolchain.exceptions.LockfileMismatchException;
+import dev.qilletni.toolchain.qll.DependencyResolver;
 import dev.qilletni.toolchain.qll.GradleProjectHelper;
 import dev.qilletni.toolchain.qll.LibraryValidator;
+import dev.qilletni.toolchain.qll.LocalSourceResolver;
+import dev.qilletni.toolchain.qll.MappedZip;
+import dev.qilletni.toolchain.qll.QllArchive;
+import dev.qilletni.toolchain.qll.QllJarCache;
 import dev.qilletni.toolchain.qll.QllJarExtractor;
 import dev.qilletni.toolchain.qll.QllLoader;
+import dev.qilletni.toolchain.qll.QllLockfile;
+import dev.qilletni.toolchain.qll.QllPackageIndex;
+import dev.qilletni.toolchain.run.LoadedLibraryCache;
+import dev.qilletni.toolchain.run.RunTimings;
+import dev.qilletni.toolchain.run.SourceWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @CommandLine.Command(name = "run", description = "Runs a Qilletni program")
 public class CommandRun implements Callable<Integer> {
@@ -40,6 +64,30 @@ public class CommandRun implements Callable<Integer> {
     @CommandLine.Option(names = {"--use-native-jar", "-j"}, description = "If running a library example, use the native jar of it")
     private boolean useNativeJar;
 
+    @CommandLine.Option(names = {"--only-dependencies"}, description = "Only load the libraries reachable from the program's (or local library's) declared dependencies, instead of every installed library")
+    private boolean onlyDependencies;
+
+    @CommandLine.Option(names = {"--lockfile"}, description = "Load the libraries locked in a " + QllLockfile.LOCKFILE_NAME + " next to the program, or create it if it doesn't exist")
+    private boolean useLockfile;
+
+    @CommandLine.Option(names = {"--update-lockfile"}, description = "Resolve the libraries again and rewrite the lockfile, when used with --lockfile")
+    private boolean updateLockfile;
+
+    @CommandLine.Option(names = {"--no-cache"}, description = "Extract native jars into a fresh temporary directory instead of using the native jar cache")
+    private boolean noCache;
+
+    @CommandLine.Option(names = {"--watch", "-w"}, description = "Keep running, and run the program again whenever it or the local library's sources change")
+    private boolean watch;
+
+    @CommandLine.Option(names = {"--timings"}, description = "Log the time, allocations and bytes read of each phase of starting the program, and of loading each library")
+    private boolean timings;
+
+    @CommandLine.Option(names = {"--timings-json"}, description = "Write the timings of starting the program to a JSON file")
+    private Path timingsJsonPath;
+
+    @CommandLine.Option(names = {"--gradle-timeout"}, defaultValue = "60", description = "The number of seconds a Gradle task may run before it is stopped")
+    private long gradleTimeoutSeconds;
+
     @CommandLine.Option(names = {"--log-port", "-p"}, defaultValue = "-1", description = "The port to use for logging")
     private int logPort;
     
@@ -49,6 +97,9 @@ public class CommandRun implements Callable<Integer> {
     @CommandLine.Parameters(description = "The program arguments", index = "1..")
     private List<String> args; // first is the file to run, after is the params
 
+    private final RunTimings runTimings = new RunTimings();
+    private boolean timingsReported;
+
     @Override
     public Integer call() throws IOException {
 
@@ -56,6 +107,11 @@ public class CommandRun implements Callable<Integer> {
             LogSetup.setupLogSocket(logPort);
         }
 
+        if (gradleTimeoutSeconds < 1) {
+            LOGGER.error("Invalid Gradle timeout {}, it must be at least 1 second", gradleTimeoutSeconds);
+            return 1;
+        }
+
         if (Files.notExists(file)) {
             LOGGER.error("Qilletni input file {} does not exist!", file.toAbsolutePath());
             return 1;
@@ -67,36 +123,86 @@ public class CommandRun implements Callable<Integer> {
 
         var tempRunDir = Files.createTempDirectory("ql-run");
 
+        // --watch only stops with Ctrl+C, which skips the finally block below
+        var shutdownHook = new Thread(() -> deleteTempRunDir(tempRunDir));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        // Packaged library sources are read lazily, so their archives stay open until the program has finished
+        var openArchives = Collections.synchronizedList(new ArrayList<QllArchive>());
+
+        try {
+            return runWithTempDirectory(tempRunDir, openArchives);
+        } finally {
+            // Runs that failed before finishing still report how far they got
+            reportTimings();
+
+            closeArchives(openArchives);
+
+            // The daemon runs many programs, so hooks mustn't pile up. If the JVM is already exiting, the hook deletes it
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                deleteTempRunDir(tempRunDir);
+            } catch (IllegalStateException ignored) {}
+        }
+    }
+
+    private static void deleteTempRunDir(Path tempRunDir) {
+        try {
+            FileUtil.deleteDirectory(tempRunDir);
+        } catch (UncheckedIOException e) {
+            LOGGER.warn("Unable to delete temporary run directory {}", tempRunDir, e);
+        }
+    }
+
+    private int runWithTempDirectory(Path tempRunDir, List<QllArchive> openArchives) throws IOException {
+        QllJarCache jarCache = null;
+
+        if (!noCache) {
+            try (var ignored = runTimings.startPhase("evict-native-cache")) {
+                jarCache = new QllJarCache(PathUtility.getNativeCachePath());
+                jarCache.evictStaleEntries();
+            }
+        }
+
         var qllLoader = new QllLoader();
         var qllJarExtractor = new QllJarExtractor();
         var librarySourceFileResolver = new LibrarySourceFileResolver();
         
         var loadedLibraries = new ArrayList<QllInfo>();
         QllInfo localLibraryQll = null;
+        LocalSourceResolver localSourceResolver = null;
+        var usesLocalNativeJar = false;
 
         if (localLibrary != null) {
-            LOGGER.info("Loading local library at {}", localLibrary);
-            localLibraryQll = qllLoader.loadLocalLibrary(librarySourceFileResolver, localLibrary);
-            loadedLibraries.add(localLibraryQll);
-
-            if (useNativeJar) {
-                if (GradleProjectHelper.isGradleProject(localLibrary)) {
-                    var gradleProjectHelper = GradleProjectHelper.createProjectHelper(localLibrary).orElseThrow(() -> new RuntimeException("Unable to interact with Gradle project"));
-                    var gradleJarOptional = gradleProjectHelper.findProjectJar(false);
-
-                    if (gradleJarOptional.isPresent()) {
-                        LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
-
-                        var gradleJar = gradleJarOptional.get();
-
-                        // Copy it if it's been created
-                        if (Files.exists(gradleJar)) {
-                            qllJarExtractor.copyLocalNativeJar(gradleJar, tempRunDir, localLibraryQll);
+            try (var ignored = runTimings.startPhase("load-local-library")) {
+                LOGGER.info("Loading local library at {}", localLibrary);
+                var readLocalLibrary = qllLoader.readLocalLibrary(localLibrary);
+                readLocalLibrary.registerWith(librarySourceFileResolver);
+
+                localLibraryQll = readLocalLibrary.qllInfo();
+                localSourceResolver = readLocalLibrary.sourceResolver();
+                loadedLibraries.add(localLibraryQll);
+
+                if (useNativeJar) {
+                    if (GradleProjectHelper.isGradleProject(localLibrary)) {
+                        var gradleProjectHelper = GradleProjectHelper.createProjectHelper(localLibrary, Duration.ofSeconds(gradleTimeoutSeconds)).orElseThrow(() -> new RuntimeException("Unable to interact with Gradle project"));
+                        var gradleJarOptional = gradleProjectHelper.findProjectJar(false);
+
+                        if (gradleJarOptional.isPresent()) {
+                            LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
+
+                            var gradleJar = gradleJarOptional.get();
+
+                            // Copy it if it's been created
+                            if (Files.exists(gradleJar)) {
+                                qllJarExtractor.copyLocalNativeJar(gradleJar, tempRunDir, localLibraryQll);
+                                usesLocalNativeJar = true;
+                            } else {
+                                LOGGER.error("Expected to find jar file {}, has it been built?", gradleJar);
+                            }
                         } else {
-                            LOGGER.error("Expected to find jar file {}, has it been built?", gradleJar);
+                            LOGGER.error("Unable to find jar output found in Gradle project");
                         }
-                    } else {
-                        LOGGER.error("Unable to find jar output found in Gradle project");
                     }
                 }
             }
@@ -104,53 +210,143 @@ public class CommandRun implements Callable<Integer> {
 
         var localLibraryName = localLibraryQll != null ? localLibraryQll.name() : null;
 
-        try (var deps = Files.list(dependencyPath)) {
-            deps.filter(path -> path.getFileName().toString().endsWith(".qll"))
-                    .forEach(path -> {
-                        qllJarExtractor.extractJarTo(path, tempRunDir);
+        var lockfilePath = QllLockfile.getLockfilePath(file);
+        Optional<QllLockfile> lockfile;
+        List<QllLockfile.LockedLibrary> selectedLibraries;
 
-                        try {
-                            var loadedQll = qllLoader.loadQll(librarySourceFileResolver, path);
+        try (var ignored = runTimings.startPhase("resolve-dependencies")) {
+            lockfile = useLockfile && !updateLockfile ? QllLockfile.read(lockfilePath) : Optional.empty();
 
-                            if (loadedQll.name().equals(localLibraryName)) {
-                                LOGGER.debug("Skipping loading local library {} from dependencies", localLibraryName);
-                                return;
-                            }
+            // Only computed when a lockfile is used, as it reads the program's qilletni_info
+            var resolutionFingerprint = useLockfile
+                    ? QllLockfile.computeResolutionFingerprint(onlyDependencies, localLibraryQll, findRootDependencies(localLibraryQll))
+                    : null;
 
-                            loadedLibraries.add(loadedQll);
-                        } catch (IOException | URISyntaxException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+            if (lockfile.isPresent() && !lockfile.get().matchesResolution(resolutionFingerprint)) {
+                LOGGER.error("Lockfile {} was created for different dependencies, library or options. Run with --update-lockfile to resolve the libraries again", lockfilePath);
+                return 1;
+            }
 
-        } catch (IOException e) {
-            LOGGER.error("An exception occurred while reading dependencies", e);
+            if (lockfile.isPresent()) {
+                // Locked libraries were already resolved and validated, so the dependency directory isn't scanned at all
+                LOGGER.debug("Using locked libraries from {}", lockfilePath);
+
+                selectedLibraries = lockfile.get().libraries().stream()
+                        .filter(library -> !library.name().equals(localLibraryName))
+                        .toList();
+            } else {
+                try {
+                    selectedLibraries = resolveInstalledLibraries(localLibraryQll);
+                } catch (DependencyNotMetException e) {
+                    LOGGER.error(e.getMessage());
+                    LOGGER.error("Exiting due to unmet dependencies");
+                    return 1;
+                }
+
+                if (useLockfile) {
+                    LOGGER.info("Writing lockfile to {}", lockfilePath);
+                    new QllLockfile(resolutionFingerprint, selectedLibraries).write(lockfilePath);
+                }
+            }
         }
 
-        var qllJarClassLoader = qllJarExtractor.createClassLoader();
+        // Only the daemon keeps libraries loaded between runs, and a fresh extraction was asked for with --no-cache
+        var libraryCache = noCache ? Optional.<LoadedLibraryCache>empty() : LoadedLibraryCache.getSharedCache();
+
+        List<LoadedDependency> loadedDependencies;
+
+        try (var ignored = runTimings.startPhase("load-dependencies")) {
+            loadedDependencies = loadDependencies(selectedLibraries, lockfile.isPresent(), qllLoader, qllJarExtractor, jarCache, libraryCache, tempRunDir, openArchives);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LockfileMismatchException mismatchException) {
+                LOGGER.error("{}. Run with --update-lockfile to resolve the libraries again", mismatchException.getMessage());
+                return 1;
+            }
 
-        var libraryValidator = new LibraryValidator(loadedLibraries);
-        if (!libraryValidator.validate()) {
-            LOGGER.error("Exiting due to unmet dependencies");
+            LOGGER.error("An exception occurred while loading dependencies", e.getCause());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while loading dependencies", e);
             return 1;
         }
 
+        ClassLoader qllJarClassLoader;
+
+        try (var ignored = runTimings.startPhase("register-libraries")) {
+            // Registration happens on this thread, as the resolver isn't made to be used concurrently
+            for (var loadedDependency : loadedDependencies) {
+                var loadedQll = loadedDependency.loadedQll();
+
+                loadedQll.registerWith(librarySourceFileResolver);
+                loadedDependency.nativeJar().ifPresent(qllJarExtractor::addJar);
+                loadedLibraries.add(loadedQll.qllInfo());
+            }
+
+            if (libraryCache.isPresent() && !usesLocalNativeJar) {
+                var cachedLibraries = loadedDependencies.stream()
+                        .map(LoadedDependency::cachedLibrary)
+                        .flatMap(Optional::stream)
+                        .toList();
+
+                qllJarClassLoader = libraryCache.get().getClassLoader(cachedLibraries, qllJarExtractor::createClassLoader);
+            } else {
+                qllJarClassLoader = qllJarExtractor.createClassLoader();
+            }
+        }
+
+        // Locked libraries were validated when the lockfile was written
+        if (lockfile.isEmpty()) {
+            try (var ignored = runTimings.startPhase("validate-libraries")) {
+                var libraryValidator = new LibraryValidator(loadedLibraries);
+                if (!libraryValidator.validate()) {
+                    LOGGER.error("Exiting due to unmet dependencies");
+                    return 1;
+                }
+            }
+        }
+
         LOGGER.debug("Loaded libraries!");
 
+        var exitCode = runProgram(loadedLibraries, librarySourceFileResolver, qllJarClassLoader, runTimings);
+
+        if (!watch) {
+            return exitCode;
+        }
+
+        // Only the first run is timed, later runs just log how long they took
+        reportTimings();
+
+        return watchAndRerun(loadedLibraries, librarySourceFileResolver, qllJarClassLoader, localSourceResolver);
+    }
+
+    /**
+     * Runs the program once with a fresh runner, using the already loaded libraries.
+     *
+     * @param timings The timings to record the run's phases to
+     * @return The exit code of the run
+     */
+    private int runProgram(List<QllInfo> loadedLibraries, LibrarySourceFileResolver librarySourceFileResolver, ClassLoader qllJarClassLoader, RunTimings timings) {
         final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
 
         try {
             Thread.currentThread().setContextClassLoader(qllJarClassLoader);
             
-            var dynamicProvider = ServiceManager.createDynamicProvider(loadedLibraries);
+            QilletniProgramRunner runner;
+
+            try (var ignored = timings.startPhase("create-service-provider")) {
+                var dynamicProvider = ServiceManager.createDynamicProvider(loadedLibraries);
 
-            var runner = new QilletniProgramRunner(dynamicProvider, librarySourceFileResolver, loadedLibraries);
+                runner = new QilletniProgramRunner(dynamicProvider, librarySourceFileResolver, loadedLibraries);
+            }
 
             LOGGER.debug("Importing initial files");
-            
-            runner.importInitialFiles();
 
-            try {
+            try (var ignored = timings.startPhase("import-initial-files")) {
+                runner.importInitialFiles();
+            }
+
+            try (var ignored = timings.startPhase("run-program")) {
                 LOGGER.debug("Running program: {}", file.getFileName());
                 runner.runProgram(file);
             } catch (QilletniException | IOException e) {
@@ -167,6 +363,321 @@ public class CommandRun implements Callable<Integer> {
         return 0;
     }
 
+    /**
+     * Watches the program and the local library's sources, running the program again whenever they change. Packaged
+     * libraries and native jars stay loaded between runs, and only the changed local sources are read again. This only
+     * returns if watching fails.
+     */
+    private int watchAndRerun(List<QllInfo> loadedLibraries, LibrarySourceFileResolver librarySourceFileResolver, ClassLoader qllJarClassLoader, LocalSourceResolver localSourceResolver) throws IOException {
+        try (var sourceWatcher = new SourceWatcher()) {
+            sourceWatcher.watchDirectory(file.toAbsolutePath().getParent());
+
+            if (localSourceResolver != null) {
+                sourceWatcher.watchDirectoryTree(localSourceResolver.getSourcePath().toAbsolutePath());
+            }
+
+            while (true) {
+                LOGGER.info("Watching for changes, press Ctrl+C to stop");
+
+                var changedFiles = sourceWatcher.awaitChanges();
+
+                for (var changedFile : changedFiles) {
+                    if (changedFile.getFileName().toString().startsWith("qilletni_info.")) {
+                        LOGGER.warn("{} changed, restart to pick up changes to the library's info or dependencies", changedFile.getFileName());
+                    } else if (localSourceResolver != null) {
+                        localSourceResolver.invalidate(changedFile);
+                    }
+                }
+
+                LOGGER.info("Detected changes in {}, running {} again", changedFiles.stream().map(Path::getFileName).toList(), file.getFileName());
+
+                var startTime = System.nanoTime();
+
+                try {
+                    var exitCode = runProgram(loadedLibraries, librarySourceFileResolver, qllJarClassLoader, new RunTimings());
+                    LOGGER.info("Run finished with exit code {} in {} ms", exitCode, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                } catch (RuntimeException e) {
+                    // A broken edit shouldn't stop the watcher, the next change may fix it
+                    LOGGER.error("An exception occurred while running {}", file.getFileName(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Stopped watching for changes", e);
+            return 1;
+        }
+    }
+
+    /**
+     * Opens all given libraries and maps their native jars concurrently, returning them in the same order as the given
+     * libraries. Native jars that can't be read in place are extracted (or taken from the cache) first. If libraries
+     * are kept loaded between runs, unchanged libraries are taken from the library cache instead of being opened.
+     *
+     * @param verifyHashes If each archive's hash should be checked against the library's hash before it is loaded
+     */
+    private List<LoadedDependency> loadDependencies(List<QllLockfile.LockedLibrary> libraries, boolean verifyHashes, QllLoader qllLoader, QllJarExtractor qllJarExtractor, QllJarCache jarCache, Optional<LoadedLibraryCache> libraryCache, Path tempRunDir, List<QllArchive> openArchives) throws ExecutionException, InterruptedException {
+        try (var executor = createLoadingExecutor()) {
+            var futures = libraries.stream()
+                    .map(library -> executor.submit(() -> {
+                        var qllPath = dependencyPath.resolve(library.fileName());
+
+                        try (var ignored = runTimings.startLibrary(library.name(), library.version(), qllPath)) {
+                            if (verifyHashes) {
+                                verifyLockedLibrary(library, qllPath);
+                            }
+
+                            if (libraryCache.isPresent()) {
+                                // Cached archives stay open for later runs, so they aren't closed with this run's archives
+                                var cachedLibrary = libraryCache.get().getLibrary(qllPath, path -> openLibrary(path, qllJarExtractor, jarCache, tempRunDir));
+
+                                return new LoadedDependency(qllLoader.readQll(cachedLibrary.archive(), library.qllInfo()), cachedLibrary.nativeJar(), Optional.of(cachedLibrary));
+                            }
+
+                            var openedLibrary = openLibrary(qllPath, qllJarExtractor, jarCache, tempRunDir);
+                            openArchives.add(openedLibrary.archive());
+
+                            return new LoadedDependency(qllLoader.readQll(openedLibrary.archive(), library.qllInfo()), openedLibrary.nativeJar(), Optional.empty());
+                        }
+                    }))
+                    .toList();
+
+            var loadedDependencies = new ArrayList<LoadedDependency>(futures.size());
+
+            for (var future : futures) {
+                loadedDependencies.add(future.get());
+            }
+
+            return loadedDependencies;
+        }
+    }
+
+    /**
+     * Creates the executor libraries are loaded on. Loading is mostly waiting on the disk, so virtual threads are used,
+     * except when timing the run. Virtual threads don't count their allocations, so each library is loaded on its own
+     * platform thread to record them.
+     */
+    private ExecutorService createLoadingExecutor() {
+        if (isTimingRun()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("ql-load-", 0).factory());
+        }
+
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    private boolean isTimingRun() {
+        return timings || timingsJsonPath != null;
+    }
+
+    /**
+     * Logs and writes the timings of the run, if they were asked for. This only reports once, even if called again.
+     */
+    private void reportTimings() {
+        if (!isTimingRun() || timingsReported) {
+            return;
+        }
+
+        timingsReported = true;
+
+        var report = runTimings.createReport(file);
+
+        if (timings) {
+            RunTimings.logReport(report);
+        }
+
+        if (timingsJsonPath != null) {
+            try {
+                RunTimings.writeReport(report, timingsJsonPath);
+                LOGGER.info("Wrote timings to {}", timingsJsonPath.toAbsolutePath());
+            } catch (IOException e) {
+                LOGGER.error("Unable to write timings to {}", timingsJsonPath, e);
+            }
+        }
+    }
+
+    /**
+     * Opens a library and maps its native jar. Each archive is only opened once, for both the sources and the native
+     * jar.
+     */
+    private LoadedLibraryCache.OpenedLibrary openLibrary(Path qllPath, QllJarExtractor qllJarExtractor, QllJarCache jarCache, Path tempRunDir) throws IOException {
+        var qllArchive = QllArchive.open(qllPath);
+
+        try {
+            // Jars stored uncompressed are read in place, older libraries have theirs extracted first
+            var nativeJar = qllArchive.mapNativeJar();
+
+            if (nativeJar.isEmpty() && qllArchive.hasNativeJar()) {
+                var extractedJar = jarCache != null
+                        ? jarCache.getNativeJar(qllArchive)
+                        : qllJarExtractor.extractJar(qllArchive, tempRunDir);
+
+                nativeJar = extractedJar.isPresent() ? Optional.of(MappedZip.open(extractedJar.get())) : Optional.empty();
+            }
+
+            return new LoadedLibraryCache.OpenedLibrary(qllArchive, nativeJar);
+        } catch (IOException | RuntimeException e) {
+            qllArchive.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks that a locked library's archive still exists and has the hash it was locked with.
+     *
+     * @param library The locked library
+     * @param qllPath The path of the library's archive
+     * @throws LockfileMismatchException If the archive is missing or has changed
+     */
+    private void verifyLockedLibrary(QllLockfile.LockedLibrary library, Path qllPath) throws IOException {
+        if (Files.notExists(qllPath)) {
+            throw new LockfileMismatchException("Locked library %s %s (%s) is no longer installed".formatted(library.name(), library.version(), library.fileName()));
+        }
+
+        var hash = FileUtil.hashFile(qllPath);
+
+        if (!hash.equals(library.hash())) {
+            throw new LockfileMismatchException("Locked library %s %s (%s) has changed, expected hash %s but found %s".formatted(library.name(), library.version(), library.fileName(), library.hash(), hash));
+        }
+    }
+
+    /**
+     * Reads the installed libraries from the dependency directory's {@link QllPackageIndex}, and picks the ones to
+     * load. The local library is never picked from the installed libraries.
+     *
+     * @param localLibraryQll The local library, or <code>null</code> if there is none
+     * @return The libraries to load, with dependencies before their dependents
+     */
+    private List<QllLockfile.LockedLibrary> resolveInstalledLibraries(QllInfo localLibraryQll) throws IOException {
+        var localLibraryName = localLibraryQll != null ? localLibraryQll.name() : null;
+
+        // The index knows every installed library's info, so archives are only opened for libraries being loaded
+        var packageIndex = QllPackageIndex.load(dependencyPath);
+
+        boolean indexChanged = false;
+
+        try {
+            indexChanged = packageIndex.refresh();
+        } catch (IOException e) {
+            LOGGER.error("An exception occurred while reading dependencies", e);
+        }
+
+        if (indexChanged) {
+            // The refreshed index is still used for this run, saving it only speeds up the next one
+            try {
+                packageIndex.save();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to write the package index to {}, it will be rebuilt next run", dependencyPath, e);
+            }
+        }
+
+        var availableEntries = packageIndex.getEntries().stream()
+                .filter(entry -> {
+                    if (entry.qllInfo().name().equals(localLibraryName)) {
+                        LOGGER.debug("Skipping loading local library {} from dependencies", localLibraryName);
+                        return false;
+                    }
+
+                    return true;
+                })
+                .toList();
+
+        return resolveDependencies(availableEntries, localLibraryQll).stream()
+                .map(entry -> new QllLockfile.LockedLibrary(entry.qllInfo().name(), entry.qllInfo().version().getVersionString(), entry.fileName(), entry.hash(), entry.qllInfo()))
+                .toList();
+    }
+
+    /**
+     * Picks the installed libraries to load. By default every installed library is required, and with
+     * <code>--only-dependencies</code> only those reachable from the program's declared dependencies and auto imported
+     * libraries are. In both cases only one version of each library is picked.
+     *
+     * @param availableEntries The installed libraries
+     * @param localLibraryQll  The local library, or <code>null</code> if there is none
+     * @return The libraries to load, with dependencies before their dependents
+     */
+    private List<QllPackageIndex.IndexEntry> resolveDependencies(List<QllPackageIndex.IndexEntry> availableEntries, QllInfo localLibraryQll) throws IOException {
+        var roots = new ArrayList<DependencyResolver.Requirement>();
+        var rootDependencies = onlyDependencies ? findRootDependencies(localLibraryQll) : Optional.<List<QilletniInfoData.Dependency>>empty();
+
+        if (rootDependencies.isPresent()) {
+            rootDependencies.get().forEach(dependency -> roots.add(DependencyResolver.Requirement.fromDependency(dependency, null)));
+
+            // Auto imported files are imported into every program, so their libraries are always needed
+            availableEntries.stream()
+                    .map(QllPackageIndex.IndexEntry::qllInfo)
+                    .filter(qllInfo -> qllInfo.autoImportFiles() != null && !qllInfo.autoImportFiles().isEmpty())
+                    .map(QllInfo::name)
+                    .distinct()
+                    .forEach(name -> roots.add(new DependencyResolver.Requirement(name, null, null)));
+        } else {
+            if (onlyDependencies) {
+                LOGGER.warn("No qilletni_info found for {}, loading all libraries", file);
+            }
+
+            availableEntries.stream()
+                    .map(entry -> entry.qllInfo().name())
+                    .distinct()
+                    .forEach(name -> roots.add(new DependencyResolver.Requirement(name, null, null)));
+        }
+
+        var entriesByInfo = new IdentityHashMap<QllInfo, QllPackageIndex.IndexEntry>();
+        availableEntries.forEach(entry -> entriesByInfo.put(entry.qllInfo(), entry));
+
+        var dependencyResolver = new DependencyResolver(entriesByInfo.keySet());
+        var providedLibraries = localLibraryQll == null ? List.<QllInfo>of() : List.of(localLibraryQll);
+
+        return dependencyResolver.resolve(roots, providedLibraries).stream()
+                .map(entriesByInfo::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Finds the dependencies declared by the program being run. This is the local library's dependencies if one is
+     * used, otherwise the dependencies in the closest <code>qilletni_info</code> file to the program.
+     *
+     * @param localLibraryQll The local library, or <code>null</code> if there is none
+     * @return The root dependencies, or empty if no <code>qilletni_info</code> file could be found
+     */
+    private Optional<List<QilletniInfoData.Dependency>> findRootDependencies(QllInfo localLibraryQll) throws IOException {
+        if (localLibraryQll != null) {
+            return Optional.of(localLibraryQll.dependencies());
+        }
+
+        for (var directory = file.toAbsolutePath().getParent(); directory != null; directory = directory.getParent()) {
+            for (var candidate : List.of(directory, directory.resolve("qilletni-src"))) {
+                if (QilletniInfoParser.findQilletniInfoFile(candidate).isPresent()) {
+                    LOGGER.debug("Using dependencies from qilletni_info in {}", candidate);
+                    return Optional.of(QilletniInfoParser.readQilletniInfo(candidate).dependencies());
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private void closeArchives(List<QllArchive> openArchives) {
+        synchronized (openArchives) {
+            for (var qllArchive : openArchives) {
+                try {
+                    qllArchive.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to close {}", qllArchive.getPath(), e);
+                }
+            }
+
+            openArchives.clear();
+        }
+    }
+
+    /**
+     * A .qll dependency that has been opened and had its native jar mapped, but has not been registered yet.
+     *
+     * @param loadedQll     The read library
+     * @param nativeJar     The mapped native jar, if the library has one
+     * @param cachedLibrary The library in the library cache, if libraries are kept loaded between runs
+     */
+    private record LoadedDependency(QllLoader.LoadedQll loadedQll, Optional<MappedZip> nativeJar, Optional<LoadedLibraryCache.CachedLibrary> cachedLibrary) {}
+
     @Override
     public String toString() {
         return "CommandRunArgs{" +
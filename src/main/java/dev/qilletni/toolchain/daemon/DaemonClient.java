@@ -0,0 +1,59 @@
+package dev.qilletni.toolchain.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.OptionalInt;
+
+/**
+ * Sends requests to a running daemon. Commands are normally sent by the <code>qilletni</code> script, so this is only
+ * used to control the daemon itself.
+ */
+public class DaemonClient {
+
+    /**
+     * Checks if a daemon is accepting connections on a socket, as a socket file may be left behind by a daemon that
+     * was killed.
+     *
+     * @param socketPath The path of the socket file
+     * @return If a daemon accepted a connection
+     */
+    public static boolean isListening(Path socketPath) {
+        try (var ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Asks the daemon to stop after the command it is currently executing.
+     *
+     * @param socketPath The path of the socket file
+     * @return The exit code the daemon responded with, or empty if it closed the connection without one
+     */
+    public static OptionalInt stop(Path socketPath) throws IOException {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            DaemonRequest.stop().write(Channels.newOutputStream(channel));
+
+            var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("X")) {
+                    return OptionalInt.of(Integer.parseInt(line.substring(1)));
+                }
+            }
+
+            return OptionalInt.empty();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package dev.qilletni.toolchain.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request sent to the daemon. Requests are written as NUL-terminated UTF-8 fields, so they can be written by a shell
+ * client with <code>printf '%s\0'</code>:
+ * <pre>
+ * exec\0&lt;working directory&gt;\0&lt;argument count&gt;\0&lt;argument&gt;\0...
+ * stop\0
+ * </pre>
+ *
+ * @param kind             What the daemon should do
+ * @param workingDirectory The client's working directory, which relative paths are resolved against
+ * @param args             The arguments of the command to execute
+ */
+public record DaemonRequest(Kind kind, Path workingDirectory, List<String> args) {
+
+    /**
+     * The most arguments a request may have, to not trust a length sent by any process that can connect.
+     */
+    private static final int MAX_ARGS = 4096;
+
+    public static DaemonRequest exec(Path workingDirectory, List<String> args) {
+        return new DaemonRequest(Kind.EXEC, workingDirectory, args);
+    }
+
+    public static DaemonRequest stop() {
+        return new DaemonRequest(Kind.STOP, null, List.of());
+    }
+
+    /**
+     * Reads a single request from a client.
+     *
+     * @param inputStream The stream of the client's connection
+     * @return The read request
+     * @throws IOException If the request is malformed or the client disconnected before sending all of it
+     */
+    public static DaemonRequest read(InputStream inputStream) throws IOException {
+        var kind = readField(inputStream);
+
+        switch (kind) {
+            case "stop" -> {
+                return stop();
+            }
+            case "exec" -> {
+                var workingDirectory = Path.of(readField(inputStream));
+
+                if (!workingDirectory.isAbsolute()) {
+                    throw new IOException("Working directory must be absolute, got " + workingDirectory);
+                }
+
+                int argCount;
+
+                try {
+                    argCount = Integer.parseInt(readField(inputStream));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid argument count", e);
+                }
+
+                if (argCount < 0 || argCount > MAX_ARGS) {
+                    throw new IOException("Invalid argument count " + argCount);
+                }
+
+                var args = new ArrayList<String>(argCount);
+                for (int i = 0; i < argCount; i++) {
+                    args.add(readField(inputStream));
+                }
+
+                return exec(workingDirectory, args);
+            }
+            default -> throw new IOException("Unknown request kind " + kind);
+        }
+    }
+
+    /**
+     * Writes this request to the daemon.
+     *
+     * @param outputStream The stream of the connection to the daemon
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        switch (kind) {
+            case STOP -> writeField(outputStream, "stop");
+            case EXEC -> {
+                writeField(outputStream, "exec");
+                writeField(outputStream, workingDirectory.toString());
+                writeField(outputStream, String.valueOf(args.size()));
+
+                for (var arg : args) {
+                    writeField(outputStream, arg);
+                }
+            }
+        }
+
+        outputStream.flush();
+    }
+
+    private static String readField(InputStream inputStream) throws IOException {
+        var field = new ByteArrayOutputStream();
+
+        int read;
+        while ((read = inputStream.read()) != 0) {
+            if (read == -1) {
+                throw new EOFException("Client disconnected before sending the full request");
+            }
+
+            field.write(read);
+        }
+
+        return field.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void writeField(OutputStream outputStream, String field) throws IOException {
+        outputStream.write(field.getBytes(StandardCharsets.UTF_8));
+        outputStream.write(0);
+    }
+
+    public enum Kind {
+        /**
+         * Executes a command, as if it were passed to <code>qilletni</code>.
+         */
+        EXEC,
+
+        /**
+         * Stops the daemon.
+         */
+        STOP
+    }
+}
@@ -0,0 +1,150 @@
+package dev.qilletni.toolchain.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the response of a request to the client. The response is line based, so a shell client can read it with
+ * <code>read -r</code>. Each line starts with a single character saying what it is:
+ * <ul>
+ *     <li><code>A</code> - The request was received, always the first line. A client that doesn't get it can run the
+ *     command itself, as the daemon never executed it</li>
+ *     <li><code>O</code> - A line written to stdout</li>
+ *     <li><code>E</code> - A line written to stderr</li>
+ *     <li><code>X</code> - The exit code of the command, always the last line</li>
+ * </ul>
+ */
+public class DaemonResponseWriter {
+
+    /**
+     * The longest line buffered before it is sent on its own, so output without newlines is still sent eventually.
+     */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private final OutputStream clientStream;
+    private final Object lock = new Object();
+
+    /**
+     * If writing to the client failed, in which case the client disconnected and further output is dropped.
+     */
+    private volatile boolean disconnected;
+
+    public DaemonResponseWriter(OutputStream clientStream) {
+        this.clientStream = clientStream;
+    }
+
+    /**
+     * @return A stream of the output the command writes to stdout
+     */
+    public OutputStream createStdOut() {
+        return new LineOutputStream('O');
+    }
+
+    /**
+     * @return A stream of the output the command writes to stderr
+     */
+    public OutputStream createStdErr() {
+        return new LineOutputStream('E');
+    }
+
+    /**
+     * Tells the client its request was received, and the command will be executed.
+     */
+    public void writeAccepted() {
+        writeLine('A', new byte[0], 0, 0);
+    }
+
+    /**
+     * Sends the exit code of the command, which ends the response.
+     *
+     * @param exitCode The command's exit code
+     */
+    public void writeExitCode(int exitCode) {
+        var exitCodeBytes = String.valueOf(exitCode).getBytes(StandardCharsets.UTF_8);
+        writeLine('X', exitCodeBytes, 0, exitCodeBytes.length);
+    }
+
+    /**
+     * @return If the client disconnected before the response was fully sent
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    private void writeLine(char type, byte[] line, int offset, int length) {
+        if (disconnected) {
+            return;
+        }
+
+        synchronized (lock) {
+            try {
+                clientStream.write(type);
+                clientStream.write(line, offset, length);
+                clientStream.write('\n');
+                clientStream.flush();
+            } catch (IOException e) {
+                // Commands keep running if the client goes away, their output just isn't sent anywhere
+                disconnected = true;
+            }
+        }
+    }
+
+    /**
+     * Buffers output until a full line has been written, and sends it with the given type.
+     */
+    private class LineOutputStream extends OutputStream {
+
+        private final char type;
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+
+        private LineOutputStream(char type) {
+            this.type = type;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                sendLine();
+                return;
+            }
+
+            lineBuffer.write(b);
+
+            if (lineBuffer.size() >= MAX_LINE_LENGTH) {
+                sendLine();
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        /**
+         * Sends any partial line, as nothing more will be written after the stream is closed.
+         */
+        @Override
+        public synchronized void close() {
+            if (lineBuffer.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() {
+            var line = lineBuffer.toByteArray();
+            var length = line.length;
+
+            // Lines from Windows style output would otherwise end in a stray carriage return
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+
+            writeLine(type, line, 0, length);
+            lineBuffer.reset();
+        }
+    }
+}
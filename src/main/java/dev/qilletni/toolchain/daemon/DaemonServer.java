@@ -0,0 +1,264 @@
+package dev.qilletni.toolchain.daemon;
+
+import dev.qilletni.toolchain.QilletniToolchainApplication;
+import dev.qilletni.toolchain.run.LoadedLibraryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived toolchain process, which executes commands sent over a Unix domain socket. The JVM, logging, picocli
+ * and loaded libraries stay warm between commands, so each command skips starting the toolchain.
+ * <br><br>
+ * Commands are executed one at a time, as they share the process' <code>System.out</code>, <code>System.err</code>
+ * and system properties. While a command is executed, everything written to stdout and stderr (including logs) is sent
+ * to the client that sent it, followed by its exit code.
+ */
+public class DaemonServer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonServer.class);
+
+    /**
+     * The commands the daemon executes. Others either read from stdin, which isn't forwarded, or are run rarely enough
+     * to not be worth it.
+     */
+    private static final Set<String> ALLOWED_COMMANDS = Set.of("run", "build", "doc");
+
+    /**
+     * Options that change the process' logging for good, which would affect every following command.
+     */
+    private static final Set<String> DISALLOWED_OPTIONS = Set.of("-p", "--log-port");
+
+    /**
+     * Options of <code>run</code> that never return, which would block every following command.
+     */
+    private static final Set<String> DISALLOWED_RUN_OPTIONS = Set.of("-w", "--watch");
+
+    private final Path socketPath;
+    private final ServerSocketChannel serverChannel;
+
+    private final SwitchableOutputStream stdOut;
+    private final SwitchableOutputStream stdErr;
+    private final InputStream originalStdIn;
+
+    private volatile boolean running = true;
+
+    private DaemonServer(Path socketPath, ServerSocketChannel serverChannel) {
+        this.socketPath = socketPath;
+        this.serverChannel = serverChannel;
+
+        this.stdOut = new SwitchableOutputStream(System.out);
+        this.stdErr = new SwitchableOutputStream(System.err);
+        this.originalStdIn = System.in;
+    }
+
+    /**
+     * Binds the daemon's socket. A socket file left behind by a daemon that didn't shut down cleanly is replaced, but
+     * binding fails if another daemon is still listening on it.
+     *
+     * @param socketPath The path of the socket file
+     * @return The daemon, which must be closed
+     */
+    public static DaemonServer bind(Path socketPath) throws IOException {
+        if (Files.exists(socketPath)) {
+            if (DaemonClient.isListening(socketPath)) {
+                throw new IOException("A daemon is already listening on " + socketPath);
+            }
+
+            LOGGER.debug("Removing stale daemon socket {}", socketPath);
+            Files.delete(socketPath);
+        }
+
+        var serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+
+        try {
+            bindPrivately(serverChannel, socketPath);
+        } catch (IOException | RuntimeException e) {
+            serverChannel.close();
+            throw e;
+        }
+
+        return new DaemonServer(socketPath, serverChannel);
+    }
+
+    /**
+     * Binds the socket in a new directory only this user can access, and restricts the socket's permissions before
+     * moving it into place. Anyone who can connect can run code as this user, so the socket must never be reachable
+     * by anyone else, even between binding and changing its permissions.
+     */
+    private static void bindPrivately(ServerSocketChannel serverChannel, Path socketPath) throws IOException {
+        Path privateDirectory;
+
+        try {
+            privateDirectory = Files.createTempDirectory(socketPath.toAbsolutePath().getParent(), ".daemon-",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            LOGGER.warn("Unable to restrict the permissions of {}", socketPath);
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            return;
+        }
+
+        var privateSocketPath = privateDirectory.resolve(socketPath.getFileName());
+
+        try {
+            serverChannel.bind(UnixDomainSocketAddress.of(privateSocketPath));
+            Files.setPosixFilePermissions(privateSocketPath, PosixFilePermissions.fromString("rw-------"));
+
+            // Renaming keeps the bound socket, which clients then connect to at its real path
+            Files.move(privateSocketPath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(privateSocketPath);
+            Files.delete(privateDirectory);
+        }
+    }
+
+    /**
+     * Accepts and executes requests until a stop request is received or the daemon is closed.
+     */
+    public void serve() {
+        LoadedLibraryCache.enableSharedCache();
+
+        System.setOut(new PrintStream(stdOut, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(stdErr, true, StandardCharsets.UTF_8));
+
+        LOGGER.info("Qilletni daemon listening on {}", socketPath);
+
+        while (running) {
+            try (var clientChannel = serverChannel.accept()) {
+                handleClient(clientChannel);
+            } catch (EOFException e) {
+                // Clients checking if the daemon is listening disconnect without sending anything
+                LOGGER.debug("Daemon client disconnected", e);
+            } catch (IOException e) {
+                if (!running || !serverChannel.isOpen()) {
+                    break;
+                }
+
+                LOGGER.error("Unable to handle daemon client", e);
+            }
+        }
+
+        LOGGER.info("Qilletni daemon stopped");
+    }
+
+    private void handleClient(SocketChannel clientChannel) throws IOException {
+        var request = DaemonRequest.read(new BufferedInputStream(Channels.newInputStream(clientChannel)));
+        var responseWriter = new DaemonResponseWriter(Channels.newOutputStream(clientChannel));
+        responseWriter.writeAccepted();
+
+        if (request.kind() == DaemonRequest.Kind.STOP) {
+            LOGGER.info("Received stop request");
+            running = false;
+            responseWriter.writeExitCode(0);
+            return;
+        }
+
+        var exitCode = execute(request, responseWriter);
+        responseWriter.writeExitCode(exitCode);
+    }
+
+    /**
+     * Executes a command with stdout and stderr sent to the client. Nothing is read from stdin.
+     *
+     * @return The exit code of the command
+     */
+    private int execute(DaemonRequest request, DaemonResponseWriter responseWriter) {
+        var args = request.args();
+        var startTime = System.nanoTime();
+
+        try (var clientOut = responseWriter.createStdOut();
+             var clientErr = responseWriter.createStdErr()) {
+            stdOut.setTarget(clientOut);
+            stdErr.setTarget(clientErr);
+            System.setIn(new ByteArrayInputStream(new byte[0]));
+
+            try {
+                return executeCommand(request);
+            } finally {
+                System.out.flush();
+                System.err.flush();
+
+                stdOut.resetTarget();
+                stdErr.resetTarget();
+                System.setIn(originalStdIn);
+            }
+        } catch (IOException e) {
+            // Only thrown by closing the client streams, after the command finished
+            LOGGER.debug("Unable to flush output to daemon client", e);
+            return 1;
+        } finally {
+            LOGGER.info("Executed {} in {} ms{}", args, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), responseWriter.isDisconnected() ? " (client disconnected)" : "");
+        }
+    }
+
+    private int executeCommand(DaemonRequest request) {
+        var args = request.args();
+
+        var rejection = checkRequest(args);
+        if (rejection != null) {
+            LOGGER.error(rejection);
+            return 2;
+        }
+
+        LOGGER.debug("Executing {} in {}", args, request.workingDirectory());
+
+        var commandLine = new CommandLine(new QilletniToolchainApplication());
+
+        // The daemon can't change its working directory, so relative paths are resolved against the client's
+        var workingDirectory = request.workingDirectory();
+        commandLine.registerConverter(Path.class, path -> workingDirectory.resolve(path).normalize());
+
+        return commandLine.execute(args.toArray(String[]::new));
+    }
+
+    /**
+     * @return Why the daemon won't execute the arguments, or <code>null</code> if it will
+     */
+    private static String checkRequest(List<String> args) {
+        if (args.isEmpty() || !ALLOWED_COMMANDS.contains(args.getFirst())) {
+            return "The daemon only executes the commands %s, run other commands without it".formatted(ALLOWED_COMMANDS.stream().sorted().toList());
+        }
+
+        for (var arg : args) {
+            // Everything after -- is a program argument
+            if (arg.equals("--")) {
+                break;
+            }
+
+            var optionName = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+
+            if (DISALLOWED_OPTIONS.contains(optionName) || (args.getFirst().equals("run") && DISALLOWED_RUN_OPTIONS.contains(optionName))) {
+                return "The daemon doesn't support %s, run the command without it".formatted(optionName);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        Files.deleteIfExists(socketPath);
+    }
+}
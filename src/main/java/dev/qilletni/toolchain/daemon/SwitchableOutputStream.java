@@ -0,0 +1,46 @@
+package dev.qilletni.toolchain.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that writes to whichever stream is currently set. The daemon installs these as
+ * <code>System.out</code> and <code>System.err</code> once, and points them at the client of each request while it is
+ * executed, so output from every thread of the command reaches the right client.
+ */
+class SwitchableOutputStream extends OutputStream {
+
+    private final OutputStream defaultTarget;
+    private volatile OutputStream target;
+
+    /**
+     * @param defaultTarget The stream written to while no request is being executed
+     */
+    SwitchableOutputStream(OutputStream defaultTarget) {
+        this.defaultTarget = defaultTarget;
+        this.target = defaultTarget;
+    }
+
+    void setTarget(OutputStream target) {
+        this.target = target;
+    }
+
+    void resetTarget() {
+        this.target = defaultTarget;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+}
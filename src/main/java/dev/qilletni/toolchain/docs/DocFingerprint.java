@@ -0,0 +1,174 @@
+package dev.qilletni.toolchain.docs;
+
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.cds.CdsArchive;
+import dev.qilletni.toolchain.qll.QilletniSourceHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Records the content hash of every input of a library's docs in the doc cache, so docs whose inputs haven't changed
+ * since they were last generated aren't generated again. The inputs are every <code>.ql</code> file in
+ * <code>qilletni-src</code>, the library's info file (<code>qilletni_info</code>, or <code>qll.info</code> for a .qll)
+ * and the toolchain itself, as the doc generator is part of it.
+ * <br><br>
+ * The doc generator always generates every page of a library, as pages link to each other, so a change to any input
+ * regenerates the whole library. The changed files are logged to show why.
+ */
+public class DocFingerprint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocFingerprint.class);
+
+    /**
+     * The directory in the doc cache holding a record for each library.
+     */
+    private static final String RECORD_DIRECTORY = "fingerprints";
+
+    private static final String INFO_KEY = "info";
+    private static final String SOURCE_KEY_PREFIX = "src:";
+    private static final String OUTPUT_KEY = "output";
+    private static final String TOOLCHAIN_KEY = "toolchain";
+
+    /**
+     * The identity of the running toolchain, computed the first time it is needed.
+     */
+    private static String toolchainVersion;
+
+    private final Path recordFile;
+
+    /**
+     * @param cacheDirectory The directory containing the cache of the docs
+     * @param libraryName    The name of the library
+     */
+    public DocFingerprint(Path cacheDirectory, String libraryName) {
+        this.recordFile = cacheDirectory.resolve(RECORD_DIRECTORY).resolve(libraryName + ".properties");
+    }
+
+    /**
+     * Hashes every input of a library's docs.
+     *
+     * @param sourcePath The <code>qilletni-src</code> directory
+     * @param infoFile   The library's info file, if it has one
+     * @return The hash of each input, keyed by its name
+     */
+    public SortedMap<String, String> hashInputs(Path sourcePath, Optional<Path> infoFile) throws IOException {
+        var hashes = new TreeMap<String, String>();
+
+        if (infoFile.isPresent()) {
+            hashes.put(INFO_KEY, FileUtil.hashFile(infoFile.get()));
+        }
+
+        for (var source : new QilletniSourceHandler().findQilletniSources(sourcePath).entrySet()) {
+            hashes.put(SOURCE_KEY_PREFIX + source.getKey(), FileUtil.hashFile(source.getValue()));
+        }
+
+        hashes.put(TOOLCHAIN_KEY, getToolchainVersion());
+
+        return hashes;
+    }
+
+    /**
+     * Finds which inputs have changed since the docs were last generated into the same output directory.
+     *
+     * @param hashes          The hashes of the current inputs, from {@link #hashInputs(Path, Optional)}
+     * @param outputDirectory The directory the docs are generated in
+     * @return The names of the changed, added and removed inputs, empty if the docs are up to date
+     */
+    public List<String> findChangedInputs(SortedMap<String, String> hashes, Path outputDirectory) throws IOException {
+        var record = readRecord();
+
+        if (record.isEmpty()) {
+            return List.of("no previous docs");
+        }
+
+        var properties = record.get();
+
+        if (!outputDirectory.toAbsolutePath().toString().equals(properties.getProperty(OUTPUT_KEY)) || Files.notExists(outputDirectory)) {
+            return List.of("output directory");
+        }
+
+        var changed = new ArrayList<String>();
+
+        hashes.forEach((name, hash) -> {
+            if (!hash.equals(properties.getProperty(name))) {
+                changed.add(name);
+            }
+        });
+
+        for (var name : properties.stringPropertyNames()) {
+            if (!name.equals(OUTPUT_KEY) && !hashes.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Checks if the library's docs were last generated into an output directory, so they are still in it.
+     *
+     * @param outputDirectory The directory the docs are generated in
+     * @return If the output directory has the library's docs
+     */
+    public boolean hasDocs(Path outputDirectory) throws IOException {
+        return readRecord()
+                .map(properties -> outputDirectory.toAbsolutePath().toString().equals(properties.getProperty(OUTPUT_KEY)))
+                .orElse(false);
+    }
+
+    /**
+     * Records the inputs of docs that were just generated. This is only done once the docs are generated, so docs that
+     * failed are generated again next time.
+     *
+     * @param hashes          The hashes of the inputs the docs were generated from
+     * @param outputDirectory The directory the docs were generated in
+     */
+    public void recordDocs(SortedMap<String, String> hashes, Path outputDirectory) throws IOException {
+        var properties = new Properties();
+        properties.putAll(hashes);
+        properties.setProperty(OUTPUT_KEY, outputDirectory.toAbsolutePath().toString());
+
+        Files.createDirectories(recordFile.getParent());
+
+        try (var os = Files.newOutputStream(recordFile)) {
+            properties.store(os, "Qilletni doc fingerprint");
+        }
+    }
+
+    private Optional<Properties> readRecord() throws IOException {
+        if (Files.notExists(recordFile)) {
+            return Optional.empty();
+        }
+
+        var properties = new Properties();
+        try (var is = Files.newInputStream(recordFile)) {
+            properties.load(is);
+        }
+
+        return Optional.of(properties);
+    }
+
+    /**
+     * Identifies the toolchain by the content hash of its jar. The deploy scripts download the jar again on every run,
+     * so its size and modification time can't be used. The jar is only hashed once per run, however many libraries
+     * are documented. When not running from a jar, such as from an IDE, this is always the same.
+     */
+    private static synchronized String getToolchainVersion() throws IOException {
+        if (toolchainVersion == null) {
+            var toolchainJar = CdsArchive.findToolchainJar();
+            toolchainVersion = toolchainJar.isPresent() ? FileUtil.hashFile(toolchainJar.get()) : "development";
+        }
+
+        return toolchainVersion;
+    }
+}
@@ -0,0 +1,71 @@
+package dev.qilletni.toolchain.docs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A list of libraries to generate docs for, in the same shape as <code>deploy/allowed_releases.json</code>. Each
+ * library's repository is a local checkout at <code>&lt;checkout root&gt;/&lt;owner&gt;/&lt;repo&gt;</code>, so the
+ * deploy manifest can be used as is once its repositories are cloned.
+ *
+ * @param releases The libraries to generate docs for
+ */
+public record DocManifest(List<Release> releases) {
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Reads a manifest.
+     *
+     * @param manifestPath The path of the manifest
+     * @return The read manifest
+     * @throws IOException If the manifest can't be read or isn't a valid manifest
+     */
+    public static DocManifest read(Path manifestPath) throws IOException {
+        DocManifest manifest;
+
+        try {
+            manifest = gson.fromJson(Files.readString(manifestPath), DocManifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid doc manifest " + manifestPath, e);
+        }
+
+        if (manifest == null || manifest.releases() == null) {
+            throw new IOException("Doc manifest %s has no releases".formatted(manifestPath));
+        }
+
+        for (var release : manifest.releases()) {
+            if (release.name() == null || release.repo() == null || release.sourcePath() == null) {
+                throw new IOException("Every release in %s needs a name, repo and qilletni-src".formatted(manifestPath));
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * A library to generate docs for.
+     *
+     * @param name       The name of the library
+     * @param repo       The repository of the library, as <code>owner/repo</code>
+     * @param sourcePath The path of the <code>qilletni-src</code> directory within the repository
+     */
+    public record Release(String name, String repo, @SerializedName("qilletni-src") String sourcePath) {
+
+        /**
+         * Finds the <code>qilletni-src</code> directory of the library in its local checkout.
+         *
+         * @param checkoutRoot The directory containing the checkouts, as <code>owner/repo</code> directories
+         * @return The source directory of the library
+         */
+        public Path resolveSourcePath(Path checkoutRoot) {
+            return checkoutRoot.resolve(repo).resolve(sourcePath).normalize();
+        }
+    }
+}
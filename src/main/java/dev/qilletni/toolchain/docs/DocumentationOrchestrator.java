@@ -2,24 +2,71 @@ package dev.qilletni.toolchain.docs;
 
 import dev.qilletni.api.lib.qll.QilletniInfoData;
 import dev.qilletni.docgen.DocGenerator;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 public class DocumentationOrchestrator {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(DocumentationOrchestrator.class);
+
+    private final boolean force;
+    private final boolean optimizeOutput;
+
+    /**
+     * If the symbols of any library changed, so the search index has to be written even if no docs were generated.
+     */
+    private final AtomicBoolean searchIndexChanged = new AtomicBoolean();
+
+    /**
+     * Held while a {@link DocGenerator} runs. It writes the shared doc cache and the global pages of the output without
+     * any locking of its own, so only one library's docs are generated at a time.
+     */
+    private final Object docGeneratorLock = new Object();
+
+    public DocumentationOrchestrator() {
+        this(false, true);
+    }
+
+    /**
+     * @param force          If every library should be generated, even if its inputs haven't changed
+     * @param optimizeOutput If the output should be prepared to be served as static files by a
+     *                       {@link StaticDocOptimizer}
+     */
+    public DocumentationOrchestrator(boolean force, boolean optimizeOutput) {
+        this.force = force;
+        this.optimizeOutput = optimizeOutput;
+    }
     
-    public int beginDocGen(QilletniInfoData qilletniInfo, Path cacheDirectory, Path inputDirectory, Path outputDirectory) {
+    public int beginDocGen(DocLibrary library, Path cacheDirectory, Path outputDirectory) {
+        var qilletniInfo = library.qilletniInfo();
         LOGGER.debug("Generating docs for: {}", qilletniInfo.name());
 
         try {
-            var docGenerator = new DocGenerator(cacheDirectory, outputDirectory);
-            docGenerator.generateDocs(inputDirectory, qilletniInfo);
+            var generatedLibrary = generateIfChanged(library, cacheDirectory, outputDirectory);
+
+            if (generatedLibrary.isEmpty() && !searchIndexChanged.get()) {
+                LOGGER.info("Docs for {} are up to date", qilletniInfo.name());
+                return 0;
+            }
             
-            docGenerator.regenerateGlobalIndex();
+            finishOutput(cacheDirectory, outputDirectory, generatedLibrary.stream().toList());
+
+            if (generatedLibrary.isPresent()) {
+                recordGenerated(generatedLibrary.get(), outputDirectory);
+            }
         } catch (IOException e) {
             LOGGER.error("Failed to generate docs for: {}", qilletniInfo.name(), e);
             return 1;
@@ -27,5 +74,176 @@ public class DocumentationOrchestrator {
         
         return 0;
     }
+
+    /**
+     * Generates the docs of many libraries in this process, sharing the doc cache between them. Up to <code>jobs</code>
+     * libraries are hashed and indexed at once, while their docs are generated one at a time. The global index is only
+     * regenerated once every library is done, if any library's docs changed. The search index is written along with it.
+     * A library that fails doesn't stop the others.
+     *
+     * @param libraries       The libraries to generate docs for
+     * @param cacheDirectory  The directory containing the cache of the docs
+     * @param outputDirectory The directory to put the generated docs in
+     * @param jobs            The number of libraries to generate at once
+     * @return The exit code, 0 if the docs of every library were generated
+     */
+    public int beginBatchDocGen(List<DocLibrary> libraries, Path cacheDirectory, Path outputDirectory, int jobs) {
+        LOGGER.info("Generating docs for {} libraries, {} at a time", libraries.size(), jobs);
+
+        var failedLibraries = new ArrayList<String>();
+        var generatedLibraries = new ArrayList<GeneratedLibrary>();
+
+        // Hashing sources and extracting their symbols is CPU bound, so platform threads limit how many run at once
+        try (var executor = Executors.newFixedThreadPool(jobs)) {
+            var futures = new ArrayList<Future<Optional<GeneratedLibrary>>>();
+
+            for (var library : libraries) {
+                futures.add(executor.submit(() -> generateIfChanged(library, cacheDirectory, outputDirectory)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                var name = libraries.get(i).qilletniInfo().name();
+
+                try {
+                    futures.get(i).get().ifPresent(generatedLibraries::add);
+                } catch (ExecutionException e) {
+                    LOGGER.error("Failed to generate docs for: {}", name, e.getCause());
+                    failedLibraries.add(name);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.error("Interrupted while generating docs");
+                    return 1;
+                }
+            }
+        }
+
+        if (failedLibraries.size() == libraries.size()) {
+            LOGGER.error("Failed to generate docs for every library");
+            return 1;
+        }
+
+        if (generatedLibraries.isEmpty() && failedLibraries.isEmpty() && !searchIndexChanged.get()) {
+            LOGGER.info("Docs for all {} libraries are up to date", libraries.size());
+            return 0;
+        }
+
+        try {
+            if (!generatedLibraries.isEmpty() || searchIndexChanged.get()) {
+                finishOutput(cacheDirectory, outputDirectory, generatedLibraries);
+            }
+
+            for (var generatedLibrary : generatedLibraries) {
+                recordGenerated(generatedLibrary, outputDirectory);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to finish the generated docs", e);
+            return 1;
+        }
+
+        if (!failedLibraries.isEmpty()) {
+            LOGGER.error("Generated docs for {} of {} libraries, failed: {}", libraries.size() - failedLibraries.size(), libraries.size(), String.join(", ", failedLibraries));
+            return 1;
+        }
+
+        LOGGER.info("Generated docs for {} of {} libraries, the rest were up to date", generatedLibraries.size(), libraries.size());
+        return 0;
+    }
+
+    /**
+     * Generates a library's docs, unless its inputs haven't changed since its docs were last generated into the same
+     * output directory. Docs without an output directory are always generated.
+     *
+     * @return The generated library, or empty if its docs were up to date
+     */
+    private Optional<GeneratedLibrary> generateIfChanged(DocLibrary library, Path cacheDirectory, Path outputDirectory) throws IOException {
+        var name = library.qilletniInfo().name();
+        var docFingerprint = new DocFingerprint(cacheDirectory, name);
+        var hashes = docFingerprint.hashInputs(library.sourcePath(), library.infoFile());
+
+        // Symbols are cached apart from the docs, so libraries documented before the search index existed get indexed
+        if (outputDirectory != null && new SearchIndex(cacheDirectory).updateLibrary(library, hashes)) {
+            searchIndexChanged.set(true);
+        }
+
+        if (!force && outputDirectory != null) {
+            var changedInputs = docFingerprint.findChangedInputs(hashes, outputDirectory);
+
+            if (changedInputs.isEmpty()) {
+                LOGGER.debug("Docs for {} are up to date", name);
+                return Optional.empty();
+            }
+
+            LOGGER.debug("Inputs of {} changed: {}", name, changedInputs);
+        }
+
+        LOGGER.info("Generating docs for: {}", name);
+
+        synchronized (docGeneratorLock) {
+            new DocGenerator(cacheDirectory, outputDirectory).generateDocs(library.sourcePath(), library.qilletniInfo());
+        }
+
+        return Optional.of(new GeneratedLibrary(name, docFingerprint, hashes));
+    }
+
+    /**
+     * Regenerates the global index if libraries have been generated, writes the search index, and then optimizes the
+     * whole output.
+     */
+    private void finishOutput(Path cacheDirectory, Path outputDirectory, List<GeneratedLibrary> generatedLibraries) throws IOException {
+        if (!generatedLibraries.isEmpty()) {
+            new DocGenerator(cacheDirectory, outputDirectory).regenerateGlobalIndex();
+        }
+
+        if (outputDirectory != null) {
+            var generatedNames = generatedLibraries.stream().map(GeneratedLibrary::name).collect(Collectors.toSet());
+            new SearchIndex(cacheDirectory).write(outputDirectory, generatedNames);
+        }
+
+        if (optimizeOutput && outputDirectory != null) {
+            new StaticDocOptimizer(cacheDirectory).optimize(outputDirectory);
+        }
+    }
+
+    /**
+     * Records the inputs of a library whose docs were generated. This is only done once the global index is
+     * regenerated and the output optimized too, so a run that stops in between does all of it again.
+     */
+    private void recordGenerated(GeneratedLibrary generatedLibrary, Path outputDirectory) throws IOException {
+        if (outputDirectory != null) {
+            generatedLibrary.docFingerprint().recordDocs(generatedLibrary.hashes(), outputDirectory);
+        }
+    }
+
+    private record GeneratedLibrary(String name, DocFingerprint docFingerprint, SortedMap<String, String> hashes) {}
+
+    /**
+     * A library to generate docs for.
+     *
+     * @param qilletniInfo The library's info
+     * @param sourcePath   The library's <code>qilletni-src</code> directory, which may be inside a .qll
+     * @param infoFile     The file the library's info was read from, if any
+     */
+    public record DocLibrary(QilletniInfoData qilletniInfo, Path sourcePath, Optional<Path> infoFile) {
+
+        /**
+         * Reads a library from its <code>qilletni-src</code> directory on disk.
+         *
+         * @param sourcePath The directory containing the sources and <code>qilletni_info.yml</code>
+         * @return The library
+         */
+        public static DocLibrary fromSourceDirectory(Path sourcePath) throws IOException {
+            return new DocLibrary(QilletniInfoParser.readQilletniInfo(sourcePath), sourcePath, QilletniInfoParser.findQilletniInfoFile(sourcePath));
+        }
+
+        /**
+         * Uses the sources inside an opened .qll. The library must stay open until its docs are generated.
+         *
+         * @param qllDocSource The opened library
+         * @return The library
+         */
+        public static DocLibrary fromQll(QllDocSource qllDocSource) {
+            return new DocLibrary(qllDocSource.getQilletniInfo(), qllDocSource.getSourcePath(), Optional.of(qllDocSource.getInfoFile()));
+        }
+    }
     
 }
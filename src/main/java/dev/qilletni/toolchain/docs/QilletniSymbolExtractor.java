@@ -0,0 +1,293 @@
+package dev.qilletni.toolchain.docs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the symbols declared in a <code>.ql</code> source for the search index: entities, functions (including native
+ * functions, entity methods and extension functions declared with <code>on</code>) and variables declared at the top
+ * level or in an entity. This only matches declarations and their doc comments, without parsing the whole source, so
+ * it is fast enough to run over every library on each doc build.
+ */
+public class QilletniSymbolExtractor {
+
+    private static final Pattern FUNCTION = Pattern.compile("\\b((?:(?:native|static)\\s+)*)fun\\s+([A-Za-z_]\\w*)\\s*\\(([^)]*)\\)(?:\\s+on\\s+([A-Za-z_]\\w*))?");
+
+    private static final Pattern ENTITY = Pattern.compile("\\bentity\\s+([A-Za-z_]\\w*)");
+
+    private static final Pattern VARIABLE = Pattern.compile("(?m)^[ \\t]*((?:int|double|string|boolean|collection|song|album|weights|java|[A-Z]\\w*)(?:\\[])?)\\s+([A-Za-z_]\\w*)\\s*(?:=|$)");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final int MAX_SUMMARY_LENGTH = 100;
+
+    /**
+     * Finds every symbol declared in a source.
+     *
+     * @param source The contents of the source
+     * @param file   The path of the source, relative to <code>qilletni-src</code>
+     * @return The symbols, in the order they are declared
+     */
+    public List<SearchSymbol> extractSymbols(String source, String file) {
+        var strippedSource = new StrippedSource(source);
+        var code = strippedSource.code();
+        var depths = strippedSource.braceDepths();
+        var entityBodies = findEntityBodies(code, depths);
+        var symbols = new ArrayList<Declaration>();
+
+        for (var entity : entityBodies) {
+            symbols.add(new Declaration(entity.start(), new SearchSymbol(entity.name(), SearchSymbol.ENTITY, null,
+                    "entity " + entity.name(), file, null)));
+        }
+
+        var functionMatcher = FUNCTION.matcher(code);
+        while (functionMatcher.find()) {
+            var start = functionMatcher.start();
+            var entity = findEnclosingEntity(entityBodies, start, depths[start]);
+
+            // Functions declared in another function's body aren't visible outside of it
+            if (entity == null && depths[start] != 0) {
+                continue;
+            }
+
+            var name = functionMatcher.group(2);
+            var modifiers = normalizeWhitespace(functionMatcher.group(1));
+            var signature = modifiers + (modifiers.isEmpty() ? "" : " ") + "fun " + name + "(" + normalizeWhitespace(functionMatcher.group(3)) + ")";
+            var owner = entity != null ? entity.name() : functionMatcher.group(4);
+
+            if (functionMatcher.group(4) != null) {
+                signature += " on " + functionMatcher.group(4);
+            }
+
+            symbols.add(new Declaration(start, new SearchSymbol(name, SearchSymbol.FUNCTION, owner, signature, file, null)));
+        }
+
+        var variableMatcher = VARIABLE.matcher(code);
+        while (variableMatcher.find()) {
+            var start = variableMatcher.start(1);
+            var entity = findEnclosingEntity(entityBodies, start, depths[start]);
+
+            if (entity == null && depths[start] != 0) {
+                continue;
+            }
+
+            var name = variableMatcher.group(2);
+            var signature = variableMatcher.group(1) + " " + name;
+
+            symbols.add(new Declaration(start, new SearchSymbol(name, entity != null ? SearchSymbol.FIELD : SearchSymbol.VARIABLE,
+                    entity != null ? entity.name() : null, signature, file, null)));
+        }
+
+        return symbols.stream()
+                .sorted((first, second) -> Integer.compare(first.start(), second.start()))
+                .map(declaration -> declaration.symbol().withSummary(strippedSource.findSummary(declaration.start())))
+                .toList();
+    }
+
+    /**
+     * Finds the body of every entity, between its braces.
+     */
+    private List<EntityBody> findEntityBodies(String code, int[] depths) {
+        var entityBodies = new ArrayList<EntityBody>();
+        var matcher = ENTITY.matcher(code);
+
+        while (matcher.find()) {
+            var openIndex = code.indexOf('{', matcher.end());
+
+            if (openIndex == -1) {
+                continue;
+            }
+
+            var depth = 0;
+            var closeIndex = openIndex;
+
+            for (; closeIndex < code.length(); closeIndex++) {
+                var c = code.charAt(closeIndex);
+
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    break;
+                }
+            }
+
+            entityBodies.add(new EntityBody(matcher.group(1), matcher.start(), openIndex, closeIndex, depths[openIndex] + 1));
+        }
+
+        return entityBodies;
+    }
+
+    /**
+     * Finds the entity a declaration is directly in, not nested in one of its functions.
+     */
+    private EntityBody findEnclosingEntity(List<EntityBody> entityBodies, int index, int depth) {
+        return entityBodies.stream()
+                .filter(entityBody -> entityBody.openIndex() < index && index < entityBody.closeIndex())
+                .filter(entityBody -> entityBody.bodyDepth() == depth)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String normalizeWhitespace(String text) {
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
+
+    /**
+     * A symbol with where it was declared, to find its doc comment.
+     */
+    private record Declaration(int start, SearchSymbol symbol) {}
+
+    /**
+     * The body of an entity.
+     *
+     * @param name       The name of the entity
+     * @param start      The index of the <code>entity</code> keyword
+     * @param openIndex  The index of the opening brace of the body
+     * @param closeIndex The index of the closing brace of the body, or the end of the source if it isn't closed
+     * @param bodyDepth  The brace depth of declarations directly in the body
+     */
+    private record EntityBody(String name, int start, int openIndex, int closeIndex, int bodyDepth) {}
+
+    /**
+     * A source with the contents of its comments and string literals blanked out, so they can't be mistaken for
+     * declarations or braces. Indices are the same as in the original source.
+     */
+    private static class StrippedSource {
+
+        private final String source;
+        private final String code;
+        private final int[] braceDepths;
+
+        /**
+         * The start and end index of each doc comment (<code>/** ... *&#47;</code>), in the order they appear.
+         */
+        private final List<int[]> docComments = new ArrayList<>();
+
+        StrippedSource(String source) {
+            this.source = source;
+
+            var code = new StringBuilder(source);
+            var i = 0;
+
+            while (i < source.length()) {
+                var c = source.charAt(i);
+
+                if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                    var end = source.indexOf('\n', i);
+                    end = end == -1 ? source.length() : end;
+                    blank(code, i, end);
+                    i = end;
+                } else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+                    var end = source.indexOf("*/", i + 2);
+                    end = end == -1 ? source.length() : end + 2;
+
+                    if (i + 2 < source.length() && source.charAt(i + 2) == '*') {
+                        docComments.add(new int[]{i, end});
+                    }
+
+                    blank(code, i, end);
+                    i = end;
+                } else if (c == '"') {
+                    var end = i + 1;
+
+                    while (end < source.length() && source.charAt(end) != '"' && source.charAt(end) != '\n') {
+                        end += source.charAt(end) == '\\' ? 2 : 1;
+                    }
+
+                    end = Math.min(end + 1, source.length());
+                    blank(code, i + 1, end - 1);
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+
+            this.code = code.toString();
+            this.braceDepths = new int[source.length() + 1];
+
+            var depth = 0;
+            for (int j = 0; j < this.code.length(); j++) {
+                braceDepths[j] = depth;
+
+                var codeChar = this.code.charAt(j);
+                if (codeChar == '{') {
+                    depth++;
+                } else if (codeChar == '}') {
+                    depth = Math.max(0, depth - 1);
+                }
+            }
+
+            braceDepths[source.length()] = depth;
+        }
+
+        String code() {
+            return code;
+        }
+
+        int[] braceDepths() {
+            return braceDepths;
+        }
+
+        /**
+         * Finds the first sentence of the doc comment directly before a declaration.
+         *
+         * @return The summary, or null if the declaration isn't documented
+         */
+        String findSummary(int declarationStart) {
+            for (int i = docComments.size() - 1; i >= 0; i--) {
+                var docComment = docComments.get(i);
+
+                if (docComment[1] > declarationStart) {
+                    continue;
+                }
+
+                if (!code.substring(docComment[1], declarationStart).isBlank()) {
+                    return null;
+                }
+
+                return summarize(source.substring(docComment[0] + 3, Math.max(docComment[0] + 3, docComment[1] - 2)));
+            }
+
+            return null;
+        }
+
+        private static String summarize(String docComment) {
+            var description = new StringBuilder();
+
+            for (var line : docComment.split("\n")) {
+                var trimmed = line.strip();
+                if (trimmed.startsWith("*")) {
+                    trimmed = trimmed.substring(1).strip();
+                }
+
+                if (trimmed.startsWith("@")) {
+                    break;
+                }
+
+                description.append(trimmed).append(' ');
+            }
+
+            var summary = normalizeWhitespace(description.toString());
+            var sentenceEnd = summary.indexOf(". ");
+
+            if (sentenceEnd != -1) {
+                summary = summary.substring(0, sentenceEnd + 1);
+            }
+
+            if (summary.length() > MAX_SUMMARY_LENGTH) {
+                summary = summary.substring(0, MAX_SUMMARY_LENGTH - 3).stripTrailing() + "...";
+            }
+
+            return summary.isEmpty() ? null : summary;
+        }
+
+        private static void blank(StringBuilder code, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (code.charAt(i) != '\n') {
+                    code.setCharAt(i, ' ');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dev.qilletni.toolchain.docs;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.qll.QllInfoGenerator;
+import dev.qilletni.toolchain.qll.QllPackageIndex;
+import dev.qilletni.toolchain.qll.VersionComparator;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * The sources of a packaged .qll library, read straight from the archive through a zip file system, so docs can be
+ * generated from a built library without its source repository. Nothing is extracted, and the archive stays open until
+ * this is closed.
+ */
+public class QllDocSource implements AutoCloseable {
+
+    private static final String QLL_INFO_ENTRY = "qll.info";
+    private static final String SOURCE_DIRECTORY = "/qilletni-src";
+
+    private final FileSystem fileSystem;
+    private final QilletniInfoData qilletniInfo;
+
+    private QllDocSource(FileSystem fileSystem, QilletniInfoData qilletniInfo) {
+        this.fileSystem = fileSystem;
+        this.qilletniInfo = qilletniInfo;
+    }
+
+    /**
+     * Opens a .qll and reads its <code>qll.info</code>.
+     *
+     * @param qllPath The path of the .qll library
+     * @return The opened library, which must be closed
+     */
+    public static QllDocSource open(Path qllPath) throws IOException {
+        var fileSystem = FileSystems.newFileSystem(qllPath);
+
+        try {
+            var qllInfoFile = fileSystem.getPath(QLL_INFO_ENTRY);
+
+            if (Files.notExists(qllInfoFile)) {
+                throw new FileNotFoundException("No " + QLL_INFO_ENTRY + " found in " + qllPath);
+            }
+
+            QllInfo qllInfo;
+            try (var is = Files.newInputStream(qllInfoFile)) {
+                qllInfo = new QllInfoGenerator().readQllInfo(is);
+            }
+
+            return new QllDocSource(fileSystem, toQilletniInfo(qllInfo));
+        } catch (IOException | RuntimeException e) {
+            fileSystem.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the newest installed version of a library.
+     *
+     * @param dependencyPath The directory libraries are installed in
+     * @param libraryName    The name of the library
+     * @return The .qll of the library, or empty if it isn't installed
+     */
+    public static Optional<Path> findInstalled(Path dependencyPath, String libraryName) throws IOException {
+        var packageIndex = QllPackageIndex.load(dependencyPath);
+
+        if (packageIndex.refresh()) {
+            packageIndex.save();
+        }
+
+        return packageIndex.getEntries().stream()
+                .filter(entry -> entry.qllInfo().name().equals(libraryName))
+                .max(Comparator.comparing(entry -> entry.qllInfo().version(), VersionComparator.INSTANCE))
+                .map(entry -> dependencyPath.resolve(entry.fileName()));
+    }
+
+    /**
+     * @return The info of the library, from its <code>qll.info</code>
+     */
+    public QilletniInfoData getQilletniInfo() {
+        return qilletniInfo;
+    }
+
+    /**
+     * @return The <code>qilletni-src</code> directory inside the archive
+     */
+    public Path getSourcePath() {
+        return fileSystem.getPath(SOURCE_DIRECTORY);
+    }
+
+    /**
+     * @return The <code>qll.info</code> file inside the archive
+     */
+    public Path getInfoFile() {
+        return fileSystem.getPath(QLL_INFO_ENTRY);
+    }
+
+    private static QilletniInfoData toQilletniInfo(QllInfo qllInfo) {
+        return new QilletniInfoData(qllInfo.name(), qllInfo.version(), qllInfo.author(), qllInfo.description(),
+                qllInfo.sourceUrl(), qllInfo.providerClass(), qllInfo.nativeBindFactoryClass(), qllInfo.nativeClasses(),
+                qllInfo.autoImportFiles(), qllInfo.dependencies());
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileSystem.close();
+    }
+}
@@ -0,0 +1,336 @@
+package dev.qilletni.toolchain.docs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import dev.qilletni.toolchain.FileUtil;
+import dev.qilletni.toolchain.qll.QilletniSourceHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A search index of the symbols of every documented library, which the docs site loads a piece at a time. Symbols are
+ * split into shards by the first {@link #PREFIX_LENGTH} characters of their lowercase name, so a search only loads
+ * the shard of what has been typed so far. A small manifest lists every library and shard.
+ * <br><br>
+ * The symbols of each library are kept in the doc cache, and only extracted again when the library's inputs change.
+ * Shards are named after their content, so a shard that is already written is never written again, and any web
+ * server can cache them forever. Only the manifest changes between builds. Shards no longer in the index are kept for
+ * {@link StaticDocOptimizer#SUPERSEDED_RETENTION}, for cached manifests that still list them.
+ * <br><br>
+ * To stay small, each symbol in a shard is an array of the values of {@link #FIELDS}, with missing values empty.
+ */
+public class SearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The directory in the doc cache holding the symbols of each library.
+     */
+    private static final String CACHE_DIRECTORY = "search";
+
+    /**
+     * The directory in the output the index is written to.
+     */
+    private static final String OUTPUT_DIRECTORY = "search-index";
+
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    /**
+     * The file in the doc cache recording when each shard stopped being in the index.
+     */
+    private static final String SHARD_RECORD_FILE = "shards.properties";
+
+    private static final String OUTPUT_KEY = "output";
+    private static final String SHARD_KEY_PREFIX = "shard:";
+
+    private static final int PREFIX_LENGTH = 2;
+
+    /**
+     * The number of hex characters of the content hash put in shard names.
+     */
+    private static final int NAME_HASH_LENGTH = 10;
+
+    private static final List<String> FIELDS = List.of("name", "kind", "library", "version", "owner", "signature", "file", "summary");
+
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path docCacheDirectory;
+    private final Path cacheDirectory;
+
+    /**
+     * @param cacheDirectory The directory containing the cache of the docs
+     */
+    public SearchIndex(Path cacheDirectory) {
+        this.docCacheDirectory = cacheDirectory;
+        this.cacheDirectory = cacheDirectory.resolve(CACHE_DIRECTORY);
+    }
+
+    /**
+     * Extracts a library's symbols into the doc cache, unless they were already extracted from the same inputs.
+     *
+     * @param library     The library
+     * @param inputHashes The hashes of the library's inputs, from {@link DocFingerprint#hashInputs(Path, Optional)}
+     * @return If the library's symbols were extracted
+     */
+    public boolean updateLibrary(DocumentationOrchestrator.DocLibrary library, SortedMap<String, String> inputHashes) throws IOException {
+        var name = library.qilletniInfo().name();
+        var version = library.qilletniInfo().version().getVersionString();
+        var inputsHash = FileUtil.hashString(inputHashes.toString());
+
+        var cachedLibrary = readCachedLibrary(getCacheFile(name));
+        if (cachedLibrary.isPresent() && cachedLibrary.get().inputsHash().equals(inputsHash) && cachedLibrary.get().version().equals(version)) {
+            return false;
+        }
+
+        var symbolExtractor = new QilletniSymbolExtractor();
+        var symbols = new ArrayList<SearchSymbol>();
+
+        for (var source : new QilletniSourceHandler().findQilletniSources(library.sourcePath()).entrySet()) {
+            symbols.addAll(symbolExtractor.extractSymbols(Files.readString(source.getValue()), source.getKey()));
+        }
+
+        LOGGER.debug("Found {} symbols in {}", symbols.size(), name);
+
+        Files.createDirectories(cacheDirectory);
+        Files.writeString(getCacheFile(name), gson.toJson(new CachedLibrary(FORMAT_VERSION, name, version, inputsHash, symbols)));
+
+        return true;
+    }
+
+    /**
+     * Writes the index of every library in the doc cache whose docs are in the output directory. Only shards that
+     * don't exist yet are written, and shards that haven't been in the index for
+     * {@link StaticDocOptimizer#SUPERSEDED_RETENTION} are deleted.
+     *
+     * @param outputDirectory    The directory the docs are generated in
+     * @param generatedLibraries The names of the libraries whose docs were just generated, which aren't recorded in
+     *                           their {@link DocFingerprint} yet
+     */
+    public void write(Path outputDirectory, Set<String> generatedLibraries) throws IOException {
+        var libraries = readCachedLibraries(outputDirectory, generatedLibraries);
+        var shards = new TreeMap<String, List<List<String>>>();
+
+        for (var library : libraries) {
+            for (var symbol : library.symbols()) {
+                shards.computeIfAbsent(getPrefix(symbol.name()), prefix -> new ArrayList<>())
+                        .add(toEntry(library, symbol));
+            }
+        }
+
+        var indexDirectory = outputDirectory.resolve(OUTPUT_DIRECTORY);
+        Files.createDirectories(indexDirectory);
+
+        var shardFiles = new LinkedHashMap<String, String>();
+        var writtenShards = 0;
+
+        for (var shard : shards.entrySet()) {
+            var entries = shard.getValue();
+            entries.sort(Comparator.comparing((List<String> entry) -> entry.getFirst().toLowerCase()).thenComparing(Object::toString));
+
+            var content = gson.toJson(entries);
+            var shardFile = "%s.%s.json".formatted(shard.getKey(), FileUtil.hashString(content).substring(0, NAME_HASH_LENGTH));
+
+            if (Files.notExists(indexDirectory.resolve(shardFile))) {
+                Files.writeString(indexDirectory.resolve(shardFile), content);
+                writtenShards++;
+            }
+
+            shardFiles.put(shard.getKey(), shardFile);
+        }
+
+        var manifestLibraries = libraries.stream()
+                .map(library -> new ManifestLibrary(library.name(), library.version(), library.symbols().size()))
+                .toList();
+
+        var manifest = new Manifest(FORMAT_VERSION, PREFIX_LENGTH, FIELDS, manifestLibraries, shardFiles);
+        var manifestBytes = gson.toJson(manifest).getBytes(StandardCharsets.UTF_8);
+        var manifestFile = indexDirectory.resolve(MANIFEST_FILE);
+
+        if (Files.notExists(manifestFile) || !Arrays.equals(Files.readAllBytes(manifestFile), manifestBytes)) {
+            Files.write(manifestFile, manifestBytes);
+        }
+
+        retireShards(outputDirectory, indexDirectory, new HashSet<>(shardFiles.values()));
+
+        LOGGER.info("Wrote search index of {} libraries, {} of {} shards changed", libraries.size(), writtenShards, shardFiles.size());
+    }
+
+    /**
+     * Records when each shard that is no longer in the index stopped being in it, and deletes those that stopped being
+     * in it longer than {@link StaticDocOptimizer#SUPERSEDED_RETENTION} ago.
+     */
+    private void retireShards(Path outputDirectory, Path indexDirectory, Set<String> currentShards) throws IOException {
+        var recordFile = cacheDirectory.resolve(SHARD_RECORD_FILE);
+        var previousRecord = new Properties();
+
+        if (Files.exists(recordFile)) {
+            try (var is = Files.newInputStream(recordFile)) {
+                previousRecord.load(is);
+            }
+        }
+
+        var outputPath = outputDirectory.toAbsolutePath().toString();
+        var sameOutput = outputPath.equals(previousRecord.getProperty(OUTPUT_KEY));
+
+        var now = System.currentTimeMillis();
+        var record = new Properties();
+        record.setProperty(OUTPUT_KEY, outputPath);
+
+        try (var files = Files.list(indexDirectory)) {
+            for (var file : files.toList()) {
+                var fileName = file.getFileName().toString();
+
+                // Compressed siblings are left to the StaticDocOptimizer, which removes them along with their file
+                if (fileName.endsWith(".gz") || fileName.equals(MANIFEST_FILE) || currentShards.contains(fileName)) {
+                    continue;
+                }
+
+                var supersededAt = sameOutput ? parseTime(previousRecord.getProperty(SHARD_KEY_PREFIX + fileName)) : now;
+
+                if (now - supersededAt > StaticDocOptimizer.SUPERSEDED_RETENTION.toMillis()) {
+                    Files.deleteIfExists(file);
+                } else {
+                    record.setProperty(SHARD_KEY_PREFIX + fileName, String.valueOf(supersededAt));
+                }
+            }
+        }
+
+        Files.createDirectories(cacheDirectory);
+
+        try (var os = Files.newOutputStream(recordFile)) {
+            record.store(os, "Qilletni search index shards no longer in the index");
+        }
+    }
+
+    /**
+     * @return The time in milliseconds, or now if there is none
+     */
+    private static long parseTime(String time) {
+        try {
+            return time != null ? Long.parseLong(time) : System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Gets the shard a symbol is in, from the start of its lowercase name. Characters that aren't letters or digits
+     * are replaced with <code>_</code>, and short names are padded with it.
+     */
+    private static String getPrefix(String name) {
+        var prefix = new StringBuilder(PREFIX_LENGTH);
+
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            var c = i < name.length() ? Character.toLowerCase(name.charAt(i)) : '_';
+            prefix.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+
+        return prefix.toString();
+    }
+
+    private static List<String> toEntry(CachedLibrary library, SearchSymbol symbol) {
+        return List.of(symbol.name(), symbol.kind(), library.name(), library.version(), Objects.requireNonNullElse(symbol.owner(), ""),
+                symbol.signature(), symbol.file(), Objects.requireNonNullElse(symbol.summary(), ""));
+    }
+
+    private Path getCacheFile(String libraryName) {
+        return cacheDirectory.resolve(libraryName + ".json");
+    }
+
+    /**
+     * Reads every library in the doc cache that has docs in the output directory, in order of their names. Libraries
+     * documented into another directory, or whose docs were never generated, are left out.
+     */
+    private List<CachedLibrary> readCachedLibraries(Path outputDirectory, Set<String> generatedLibraries) throws IOException {
+        if (Files.notExists(cacheDirectory)) {
+            return List.of();
+        }
+
+        var libraries = new ArrayList<CachedLibrary>();
+
+        try (var files = Files.list(cacheDirectory)) {
+            for (var file : files.filter(path -> path.getFileName().toString().endsWith(".json")).toList()) {
+                var cachedLibrary = readCachedLibrary(file);
+
+                if (cachedLibrary.isPresent() && (generatedLibraries.contains(cachedLibrary.get().name())
+                        || new DocFingerprint(docCacheDirectory, cachedLibrary.get().name()).hasDocs(outputDirectory))) {
+                    libraries.add(cachedLibrary.get());
+                }
+            }
+        }
+
+        libraries.sort(Comparator.comparing(CachedLibrary::name));
+        return libraries;
+    }
+
+    private Optional<CachedLibrary> readCachedLibrary(Path cacheFile) throws IOException {
+        if (Files.notExists(cacheFile)) {
+            return Optional.empty();
+        }
+
+        try {
+            var cachedLibrary = gson.fromJson(Files.readString(cacheFile), CachedLibrary.class);
+
+            if (cachedLibrary == null || cachedLibrary.formatVersion() != FORMAT_VERSION || cachedLibrary.symbols() == null) {
+                return Optional.empty();
+            }
+
+            return Optional.of(cachedLibrary);
+        } catch (JsonParseException e) {
+            LOGGER.debug("Ignoring invalid cached symbols {}", cacheFile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The symbols of a library, as kept in the doc cache.
+     *
+     * @param formatVersion The version of the format the symbols were extracted with
+     * @param name          The name of the library
+     * @param version       The version of the library
+     * @param inputsHash    A hash of the inputs the symbols were extracted from
+     * @param symbols       The symbols of the library
+     */
+    private record CachedLibrary(int formatVersion, String name, String version, String inputsHash, List<SearchSymbol> symbols) {}
+
+    /**
+     * The manifest of the index, which the docs site loads first.
+     *
+     * @param formatVersion The version of the index's format
+     * @param prefixLength  The length of the prefixes shards are keyed by
+     * @param fields        The values of each symbol in a shard, in order
+     * @param libraries     Every library in the index
+     * @param shards        The file of each shard, keyed by its prefix
+     */
+    private record Manifest(int formatVersion, int prefixLength, List<String> fields, List<ManifestLibrary> libraries, Map<String, String> shards) {}
+
+    /**
+     * A library in the index.
+     *
+     * @param name        The name of the library
+     * @param version     The version of the library
+     * @param symbolCount The number of symbols in the library
+     */
+    private record ManifestLibrary(String name, String version, int symbolCount) {}
+}
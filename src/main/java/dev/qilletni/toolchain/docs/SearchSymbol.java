@@ -0,0 +1,27 @@
+package dev.qilletni.toolchain.docs;
+
+/**
+ * A symbol declared in a library, as it is put in the search index.
+ *
+ * @param name      The name of the symbol
+ * @param kind      What the symbol is, one of {@link #ENTITY}, {@link #FUNCTION}, {@link #FIELD} or {@link #VARIABLE}
+ * @param owner     The entity the symbol is declared in, or the type an extension function is on, if any
+ * @param signature The declaration of the symbol, such as <code>native fun play(song) on song</code>
+ * @param file      The source the symbol is declared in, relative to <code>qilletni-src</code>
+ * @param summary   The first sentence of the symbol's doc comment, if it has one
+ */
+public record SearchSymbol(String name, String kind, String owner, String signature, String file, String summary) {
+
+    public static final String ENTITY = "entity";
+    public static final String FUNCTION = "function";
+    public static final String FIELD = "field";
+    public static final String VARIABLE = "variable";
+
+    /**
+     * @param summary The summary of the symbol
+     * @return A copy of this symbol with the given summary
+     */
+    public SearchSymbol withSummary(String summary) {
+        return new SearchSymbol(name, kind, owner, signature, file, summary);
+    }
+}
@@ -0,0 +1,490 @@
+package dev.qilletni.toolchain.docs;
+
+import dev.qilletni.toolchain.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Prepares generated docs to be served as static files, after every library and the global index are generated:
+ * <ul>
+ *     <li>Each stylesheet and script gets a copy named after its content (<code>style.0123456789.css</code>), and
+ *     pages are rewritten to reference the copies, so they can be cached forever</li>
+ *     <li>Files whose content is the same as the last time they were seen get their old modification time back, as
+ *     the doc generator rewrites every page of a library, and the modification time is what web servers base their
+ *     <code>Last-Modified</code> and <code>ETag</code> headers on</li>
+ *     <li>Text files get a <code>.gz</code> sibling, for web servers to serve as is (nginx's
+ *     <code>gzip_static</code>). These are only written when their file's content changed</li>
+ * </ul>
+ * The content hash and modification time of every file is kept in the doc cache between runs, along with every
+ * fingerprinted copy that was created. The original asset names are kept, for anything that references them other
+ * than pages. Copies of older content are kept for {@link #SUPERSEDED_RETENTION} after the asset changes, as pages
+ * cached by browsers and proxies still reference them.
+ * <br><br>
+ * Only gzip is written, as the JDK has no Brotli encoder.
+ */
+public class StaticDocOptimizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticDocOptimizer.class);
+
+    /**
+     * The file in the doc cache recording every output file.
+     */
+    private static final String RECORD_FILE = "static-output.properties";
+
+    private static final String OUTPUT_KEY = "output";
+    private static final String FILE_KEY_PREFIX = "file:";
+    private static final String COPY_KEY_PREFIX = "copy:";
+
+    /**
+     * How long files named after their content are kept once nothing current references them.
+     */
+    static final Duration SUPERSEDED_RETENTION = Duration.ofDays(7);
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of("html", "js", "css", "json", "svg", "xml", "txt");
+
+    private static final Set<String> FINGERPRINTED_EXTENSIONS = Set.of("css", "js");
+
+    /**
+     * The number of hex characters of the content hash put in fingerprinted names.
+     */
+    private static final int NAME_HASH_LENGTH = 10;
+
+    /**
+     * A stylesheet or script referenced by a <code>href</code> or <code>src</code> attribute.
+     */
+    private static final Pattern ASSET_REFERENCE = Pattern.compile("((?:href|src)\\s*=\\s*)([\"'])([^\"'?#]+\\.(?:css|js))([?#][^\"']*)?\\2", Pattern.CASE_INSENSITIVE);
+
+    private final Path recordFile;
+
+    /**
+     * @param cacheDirectory The directory containing the cache of the docs
+     */
+    public StaticDocOptimizer(Path cacheDirectory) {
+        this.recordFile = cacheDirectory.resolve(RECORD_FILE);
+    }
+
+    /**
+     * Fingerprints the assets, stabilizes modification times and precompresses the files of a docs directory.
+     *
+     * @param outputDirectory The directory the docs were generated in
+     */
+    public void optimize(Path outputDirectory) throws IOException {
+        outputDirectory = outputDirectory.toAbsolutePath();
+
+        var record = readRecord(outputDirectory);
+        var previousFiles = record.files();
+
+        var sourceFiles = new ArrayList<Path>();
+        var gzipFiles = new ArrayList<Path>();
+
+        try (var walk = Files.walk(outputDirectory)) {
+            for (var file : walk.filter(Files::isRegularFile).toList()) {
+                if (file.getFileName().toString().endsWith(GZIP_EXTENSION)) {
+                    gzipFiles.add(file);
+                } else if (!record.copies().containsKey(toRelativePath(outputDirectory, file))) {
+                    sourceFiles.add(file);
+                }
+            }
+        }
+
+        var fingerprintedAssets = fingerprintAssets(sourceFiles);
+        var copies = retireCopies(outputDirectory, record.copies(), fingerprintedAssets);
+
+        var copyOriginals = new HashMap<Path, Path>();
+        for (var copy : copies.entrySet()) {
+            copyOriginals.put(outputDirectory.resolve(copy.getKey()), outputDirectory.resolve(copy.getValue().original()));
+        }
+
+        var rewrittenPages = rewritePages(outputDirectory, sourceFiles, fingerprintedAssets, copyOriginals);
+
+        var currentFiles = new ArrayList<>(sourceFiles);
+        currentFiles.addAll(copyOriginals.keySet());
+
+        var recordedFiles = new HashMap<String, RecordedFile>();
+        var changedFiles = new ArrayList<Path>();
+
+        for (var file : currentFiles) {
+            var relativePath = toRelativePath(outputDirectory, file);
+            var hash = FileUtil.hashFile(file);
+            var previous = previousFiles.get(relativePath);
+
+            if (previous != null && previous.hash().equals(hash)) {
+                if (Files.getLastModifiedTime(file).toMillis() != previous.lastModified()) {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(previous.lastModified()));
+                }
+
+                recordedFiles.put(relativePath, previous);
+            } else {
+                recordedFiles.put(relativePath, new RecordedFile(hash, Files.getLastModifiedTime(file).toMillis()));
+                changedFiles.add(file);
+            }
+        }
+
+        var compressedFiles = compressFiles(currentFiles, new HashSet<>(changedFiles));
+
+        var currentFileSet = new HashSet<>(currentFiles);
+        for (var gzipFile : gzipFiles) {
+            var gzipFileName = gzipFile.getFileName().toString();
+            var sourceFile = gzipFile.resolveSibling(gzipFileName.substring(0, gzipFileName.length() - GZIP_EXTENSION.length()));
+
+            if (!currentFileSet.contains(sourceFile) || !isCompressed(sourceFile)) {
+                Files.deleteIfExists(gzipFile);
+            }
+        }
+
+        writeRecord(outputDirectory, recordedFiles, copies);
+
+        LOGGER.info("Optimized docs in {}: {} changed files, {} fingerprinted assets, {} rewritten pages, {} compressed files",
+                outputDirectory, changedFiles.size(), fingerprintedAssets.size(), rewrittenPages, compressedFiles);
+    }
+
+    /**
+     * Creates a copy of each stylesheet and script named after its content, unless it already exists. Copies that
+     * exist but weren't recorded, such as when the doc cache was cleared, are removed from the source files.
+     *
+     * @return The fingerprinted copy of each asset
+     */
+    private Map<Path, Path> fingerprintAssets(List<Path> sourceFiles) throws IOException {
+        var fingerprintedAssets = new HashMap<Path, Path>();
+
+        for (var file : sourceFiles) {
+            var extension = getExtension(file);
+
+            if (!FINGERPRINTED_EXTENSIONS.contains(extension)) {
+                continue;
+            }
+
+            var fileName = file.getFileName().toString();
+            var baseName = fileName.substring(0, fileName.length() - extension.length() - 1);
+            var nameHash = FileUtil.hashFile(file).substring(0, NAME_HASH_LENGTH);
+
+            fingerprintedAssets.put(file, file.resolveSibling("%s.%s.%s".formatted(baseName, nameHash, extension)));
+        }
+
+        var fingerprintedFiles = new HashSet<>(fingerprintedAssets.values());
+        fingerprintedAssets.keySet().removeIf(fingerprintedFiles::contains);
+        sourceFiles.removeIf(fingerprintedFiles::contains);
+
+        for (var fingerprintedAsset : fingerprintedAssets.entrySet()) {
+            // The name is based on the content, so an existing copy never needs to be written again
+            if (Files.notExists(fingerprintedAsset.getValue())) {
+                Files.copy(fingerprintedAsset.getKey(), fingerprintedAsset.getValue(), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+
+        return fingerprintedAssets;
+    }
+
+    /**
+     * Records the current copy of each asset, and when every other copy stopped being current. Copies that stopped
+     * being current longer than {@link #SUPERSEDED_RETENTION} ago are deleted.
+     *
+     * @return Every copy that is kept, keyed by its path relative to the output directory
+     */
+    private Map<String, CreatedCopy> retireCopies(Path outputDirectory, Map<String, CreatedCopy> previousCopies, Map<Path, Path> fingerprintedAssets) throws IOException {
+        var now = System.currentTimeMillis();
+        var copies = new HashMap<String, CreatedCopy>();
+
+        fingerprintedAssets.forEach((asset, copy) ->
+                copies.put(toRelativePath(outputDirectory, copy), new CreatedCopy(toRelativePath(outputDirectory, asset), 0)));
+
+        for (var previousCopy : previousCopies.entrySet()) {
+            var copy = previousCopy.getKey();
+            var createdCopy = previousCopy.getValue();
+
+            if (copies.containsKey(copy) || Files.notExists(outputDirectory.resolve(copy))) {
+                continue;
+            }
+
+            var supersededAt = createdCopy.supersededAt() != 0 ? createdCopy.supersededAt() : now;
+
+            if (now - supersededAt > SUPERSEDED_RETENTION.toMillis()) {
+                LOGGER.debug("Deleting outdated asset {}", copy);
+                Files.deleteIfExists(outputDirectory.resolve(copy));
+            } else {
+                copies.put(copy, new CreatedCopy(createdCopy.original(), supersededAt));
+            }
+        }
+
+        return copies;
+    }
+
+    /**
+     * Points the asset references of every page to the assets' fingerprinted copies. Pages that weren't generated
+     * again may still reference an older copy, which is pointed to the current one.
+     *
+     * @return The number of pages that changed
+     */
+    private int rewritePages(Path outputDirectory, List<Path> sourceFiles, Map<Path, Path> fingerprintedAssets, Map<Path, Path> copyOriginals) throws IOException {
+        var rewrittenPages = 0;
+
+        for (var file : sourceFiles) {
+            if (!getExtension(file).equals("html")) {
+                continue;
+            }
+
+            var page = Files.readString(file);
+            var matcher = ASSET_REFERENCE.matcher(page);
+
+            var rewrittenPage = matcher.replaceAll(match -> {
+                var reference = match.group(3);
+                var fingerprintedAsset = findReferencedAsset(outputDirectory, file, reference, copyOriginals)
+                        .map(fingerprintedAssets::get);
+
+                if (fingerprintedAsset.isEmpty()) {
+                    return Matcher.quoteReplacement(match.group());
+                }
+
+                var rewrittenReference = reference.substring(0, reference.lastIndexOf('/') + 1) + fingerprintedAsset.get().getFileName();
+                var suffix = match.group(4) != null ? match.group(4) : "";
+
+                return Matcher.quoteReplacement(match.group(1) + match.group(2) + rewrittenReference + suffix + match.group(2));
+            });
+
+            if (!rewrittenPage.equals(page)) {
+                Files.writeString(file, rewrittenPage);
+                rewrittenPages++;
+            }
+        }
+
+        return rewrittenPages;
+    }
+
+    /**
+     * Finds the file in the output directory an asset reference of a page points to, with references to a
+     * fingerprinted copy turned back into the original asset.
+     *
+     * @return The original asset, or empty if the reference is to another site or outside the output directory
+     */
+    private Optional<Path> findReferencedAsset(Path outputDirectory, Path page, String reference, Map<Path, Path> copyOriginals) {
+        if (reference.contains(":") || reference.startsWith("//")) {
+            return Optional.empty();
+        }
+
+        var referencedFile = reference.startsWith("/")
+                ? outputDirectory.resolve(reference.substring(1)).normalize()
+                : page.getParent().resolve(reference).normalize();
+
+        if (!referencedFile.startsWith(outputDirectory)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(copyOriginals.getOrDefault(referencedFile, referencedFile));
+    }
+
+    /**
+     * Writes the <code>.gz</code> sibling of every text file that changed or doesn't have one yet. Each sibling gets its
+     * file's modification time, as that is what is served for it.
+     *
+     * @return The number of files compressed
+     */
+    private int compressFiles(List<Path> files, Set<Path> changedFiles) throws IOException {
+        var filesToCompress = new ArrayList<Path>();
+
+        for (var file : files) {
+            if (isCompressed(file) && (changedFiles.contains(file) || Files.notExists(getGzipFile(file)))) {
+                filesToCompress.add(file);
+            }
+        }
+
+        if (filesToCompress.isEmpty()) {
+            return 0;
+        }
+
+        // Compression is CPU bound, so this uses a thread per core rather than virtual threads
+        try (var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            var futures = new ArrayList<Future<?>>();
+
+            for (var file : filesToCompress) {
+                futures.add(executor.submit(() -> {
+                    compressFile(file);
+                    return null;
+                }));
+            }
+
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+
+            throw new IOException("Failed to compress docs", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing docs", e);
+        }
+
+        return filesToCompress.size();
+    }
+
+    private void compressFile(Path file) throws IOException {
+        var gzipFile = getGzipFile(file);
+        var compressed = new ByteArrayOutputStream();
+
+        // Java doesn't write a timestamp into the gzip header, so the same content always compresses the same
+        try (var gzipOutputStream = new GZIPOutputStream(compressed) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            Files.copy(file, gzipOutputStream);
+        }
+
+        var compressedBytes = compressed.toByteArray();
+
+        if (Files.notExists(gzipFile) || !Arrays.equals(Files.readAllBytes(gzipFile), compressedBytes)) {
+            Files.write(gzipFile, compressedBytes);
+        }
+
+        Files.setLastModifiedTime(gzipFile, Files.getLastModifiedTime(file));
+    }
+
+    private static boolean isCompressed(Path file) {
+        return COMPRESSED_EXTENSIONS.contains(getExtension(file));
+    }
+
+    private static Path getGzipFile(Path file) {
+        return file.resolveSibling(file.getFileName() + GZIP_EXTENSION);
+    }
+
+    private static String toRelativePath(Path outputDirectory, Path file) {
+        return outputDirectory.relativize(file).toString().replace("\\", "/");
+    }
+
+    private static String getExtension(Path file) {
+        var fileName = file.getFileName().toString();
+        var dotIndex = fileName.lastIndexOf('.');
+
+        return dotIndex == -1 ? "" : fileName.substring(dotIndex + 1).toLowerCase();
+    }
+
+    /**
+     * Reads the files and copies recorded for the output directory, or nothing if the last run was for another
+     * directory.
+     */
+    private OutputRecord readRecord(Path outputDirectory) throws IOException {
+        if (Files.notExists(recordFile)) {
+            return new OutputRecord(Map.of(), Map.of());
+        }
+
+        var properties = new Properties();
+        try (var is = Files.newInputStream(recordFile)) {
+            properties.load(is);
+        }
+
+        if (!outputDirectory.toString().equals(properties.getProperty(OUTPUT_KEY))) {
+            return new OutputRecord(Map.of(), Map.of());
+        }
+
+        var files = properties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(FILE_KEY_PREFIX))
+                .flatMap(key -> RecordedFile.parse(properties.getProperty(key))
+                        .map(recordedFile -> Map.entry(key.substring(FILE_KEY_PREFIX.length()), recordedFile))
+                        .stream())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        var copies = properties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(COPY_KEY_PREFIX))
+                .flatMap(key -> CreatedCopy.parse(properties.getProperty(key))
+                        .map(createdCopy -> Map.entry(key.substring(COPY_KEY_PREFIX.length()), createdCopy))
+                        .stream())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        return new OutputRecord(files, copies);
+    }
+
+    private void writeRecord(Path outputDirectory, Map<String, RecordedFile> recordedFiles, Map<String, CreatedCopy> copies) throws IOException {
+        var properties = new Properties();
+        properties.setProperty(OUTPUT_KEY, outputDirectory.toString());
+        recordedFiles.forEach((relativePath, recordedFile) -> properties.setProperty(FILE_KEY_PREFIX + relativePath, recordedFile.toString()));
+        copies.forEach((relativePath, createdCopy) -> properties.setProperty(COPY_KEY_PREFIX + relativePath, createdCopy.toString()));
+
+        Files.createDirectories(recordFile.getParent());
+
+        try (var os = Files.newOutputStream(recordFile)) {
+            properties.store(os, "Qilletni static doc output");
+        }
+    }
+
+    /**
+     * What is recorded about an output directory.
+     *
+     * @param files  Every file as it was last seen, keyed by its path relative to the output directory
+     * @param copies Every fingerprinted copy that was created, keyed by its path relative to the output directory
+     */
+    private record OutputRecord(Map<String, RecordedFile> files, Map<String, CreatedCopy> copies) {}
+
+    /**
+     * A fingerprinted copy of an asset, created by this optimizer.
+     *
+     * @param original     The path of the asset, relative to the output directory
+     * @param supersededAt When the asset changed and this stopped being its current copy, in milliseconds, or
+     *                     <code>0</code> if it is still current
+     */
+    private record CreatedCopy(String original, long supersededAt) {
+
+        static Optional<CreatedCopy> parse(String value) {
+            var separatorIndex = value.indexOf(':');
+
+            try {
+                return Optional.of(new CreatedCopy(value.substring(separatorIndex + 1), Long.parseLong(value.substring(0, separatorIndex))));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return supersededAt + ":" + original;
+        }
+    }
+
+    /**
+     * A file in the output directory as it was last seen.
+     *
+     * @param hash         The hex SHA-256 of the file's content
+     * @param lastModified The modification time of the file, in milliseconds
+     */
+    private record RecordedFile(String hash, long lastModified) {
+
+        static Optional<RecordedFile> parse(String value) {
+            var separatorIndex = value.indexOf(':');
+
+            try {
+                return Optional.of(new RecordedFile(value.substring(0, separatorIndex), Long.parseLong(value.substring(separatorIndex + 1))));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return hash + ":" + lastModified;
+        }
+    }
+}
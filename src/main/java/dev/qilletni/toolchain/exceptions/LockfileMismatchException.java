@@ -0,0 +1,15 @@
+package dev.qilletni.toolchain.exceptions;
+
+public class LockfileMismatchException extends RuntimeException {
+
+    public LockfileMismatchException() {
+    }
+
+    public LockfileMismatchException(String message) {
+        super(message);
+    }
+
+    public LockfileMismatchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
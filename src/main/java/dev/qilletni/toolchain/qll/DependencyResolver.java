@@ -0,0 +1,255 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.ComparableVersion;
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.exceptions.DependencyNotMetException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves which installed library versions should be loaded. When several versions of a library are installed, the
+ * highest version that satisfies every requirement on it is picked. The result is a load plan ordered so every library
+ * comes after its dependencies.
+ */
+public class DependencyResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DependencyResolver.class);
+
+    /**
+     * The installed candidates of each library, newest version first.
+     */
+    private final Map<String, List<QllInfo>> candidatesByName = new HashMap<>();
+
+    private final int candidateCount;
+
+    /**
+     * @param availableLibraries Every installed library, which may include several versions of the same library
+     */
+    public DependencyResolver(Collection<QllInfo> availableLibraries) {
+        for (var library : availableLibraries) {
+            candidatesByName.computeIfAbsent(library.name(), key -> new ArrayList<>()).add(library);
+        }
+
+        candidatesByName.values().forEach(candidates -> candidates.sort(Comparator.comparing(QllInfo::version, VersionComparator.INSTANCE).reversed()));
+        candidateCount = availableLibraries.size();
+    }
+
+    /**
+     * Resolves the libraries needed by the given requirements.
+     *
+     * @param rootRequirements The libraries needed by the program, such as its declared dependencies
+     * @param providedLibraries Libraries that are always used as-is, such as a local library. Installed versions of
+     *                          these are never picked.
+     * @return The resolved libraries, with dependencies before their dependents
+     * @throws DependencyNotMetException If a library is missing, no version satisfies all requirements, or there is a
+     *                                   dependency cycle
+     */
+    public List<QllInfo> resolve(List<Requirement> rootRequirements, Collection<QllInfo> providedLibraries) {
+        var provided = new HashMap<String, QllInfo>();
+        providedLibraries.forEach(library -> provided.put(library.name(), library));
+
+        // Every provided library's dependencies must be met too
+        var roots = new ArrayList<>(rootRequirements);
+        providedLibraries.forEach(library -> roots.add(new Requirement(library.name(), null, null)));
+
+        Map<String, QllInfo> selection = new HashMap<>();
+        Resolution resolution = null;
+
+        // Picking a different version changes which requirements exist, so repeat until the selection is stable. This
+        // normally takes one or two rounds, and is capped so a pathological graph can't loop forever.
+        for (int round = 0; round <= candidateCount + 1; round++) {
+            resolution = resolveRound(roots, provided, selection);
+
+            if (resolution.selection().equals(selection)) {
+                break;
+            }
+
+            selection = resolution.selection();
+        }
+
+        if (!resolution.selection().equals(selection)) {
+            throw new DependencyNotMetException("Unable to find a stable set of library versions:\n" + createReport(resolution));
+        }
+
+        if (!resolution.unsatisfied().isEmpty()) {
+            throw new DependencyNotMetException("Unable to resolve library dependencies:\n" + createReport(resolution));
+        }
+
+        var loadOrder = createLoadOrder(selection);
+
+        LOGGER.debug("Resolved load order: {}", loadOrder.stream().map(library -> "%s@%s".formatted(library.name(), library.version().getVersionString())).toList());
+
+        return loadOrder;
+    }
+
+    /**
+     * Walks the graph from the roots using the previous round's selection, collecting every requirement that applies,
+     * and then picks the newest version of each library that satisfies all of them.
+     */
+    private Resolution resolveRound(List<Requirement> roots, Map<String, QllInfo> provided, Map<String, QllInfo> previousSelection) {
+        var requirements = new LinkedHashMap<String, List<Requirement>>();
+        var queue = new ArrayDeque<>(roots);
+
+        while (!queue.isEmpty()) {
+            var requirement = queue.poll();
+            var firstVisit = !requirements.containsKey(requirement.name());
+
+            requirements.computeIfAbsent(requirement.name(), key -> new ArrayList<>()).add(requirement);
+
+            if (!firstVisit) {
+                continue;
+            }
+
+            var library = provided.getOrDefault(requirement.name(), previousSelection.get(requirement.name()));
+
+            if (library == null) {
+                var candidates = candidatesByName.get(requirement.name());
+                library = candidates == null ? null : candidates.getFirst();
+            }
+
+            if (library != null) {
+                for (var dependency : library.dependencies()) {
+                    queue.add(new Requirement(dependency.name(), dependency.version(), library.name()));
+                }
+            }
+        }
+
+        var selection = new HashMap<String, QllInfo>();
+        var unsatisfied = new TreeMap<String, List<Requirement>>();
+
+        requirements.forEach((name, libraryRequirements) -> {
+            var providedLibrary = provided.get(name);
+
+            if (providedLibrary != null) {
+                if (libraryRequirements.stream().allMatch(requirement -> requirement.isSatisfiedBy(providedLibrary))) {
+                    selection.put(name, providedLibrary);
+                } else {
+                    unsatisfied.put(name, libraryRequirements);
+                }
+
+                return;
+            }
+
+            var candidates = candidatesByName.getOrDefault(name, List.of());
+
+            candidates.stream()
+                    .filter(candidate -> libraryRequirements.stream().allMatch(requirement -> requirement.isSatisfiedBy(candidate)))
+                    .findFirst()
+                    .ifPresentOrElse(candidate -> selection.put(name, candidate), () -> unsatisfied.put(name, libraryRequirements));
+        });
+
+        return new Resolution(selection, requirements, unsatisfied);
+    }
+
+    /**
+     * Orders the selected libraries so that each library comes after all of its dependencies. Libraries are visited
+     * by name so the order is the same every time.
+     */
+    private List<QllInfo> createLoadOrder(Map<String, QllInfo> selection) {
+        var loadOrder = new ArrayList<QllInfo>(selection.size());
+        var visited = new HashSet<String>();
+        var visiting = new ArrayList<String>();
+
+        selection.keySet().stream().sorted().forEach(name -> visit(name, selection, visited, visiting, loadOrder));
+
+        return loadOrder;
+    }
+
+    private void visit(String name, Map<String, QllInfo> selection, Set<String> visited, List<String> visiting, List<QllInfo> loadOrder) {
+        if (visited.contains(name)) {
+            return;
+        }
+
+        var cycleStart = visiting.indexOf(name);
+        if (cycleStart != -1) {
+            var cycle = new ArrayList<>(visiting.subList(cycleStart, visiting.size()));
+            cycle.add(name);
+
+            throw new DependencyNotMetException("Dependency cycle found: " + String.join(" -> ", cycle));
+        }
+
+        var library = selection.get(name);
+        visiting.add(name);
+
+        library.dependencies().stream()
+                .map(QilletniInfoData.Dependency::name)
+                .filter(selection::containsKey)
+                .sorted()
+                .forEach(dependency -> visit(dependency, selection, visited, visiting, loadOrder));
+
+        visiting.removeLast();
+        visited.add(name);
+        loadOrder.add(library);
+    }
+
+    private String createReport(Resolution resolution) {
+        var report = new StringBuilder();
+
+        resolution.unsatisfied().forEach((name, requirements) -> {
+            var installed = candidatesByName.getOrDefault(name, List.of()).stream()
+                    .map(library -> library.version().getVersionString())
+                    .collect(Collectors.joining(", "));
+
+            report.append("  Library '%s' (installed: %s)%n".formatted(name, installed.isEmpty() ? "none" : installed));
+
+            for (var requirement : requirements) {
+                report.append("    - %s%n".formatted(requirement.describe()));
+            }
+        });
+
+        if (report.isEmpty()) {
+            resolution.selection().values().stream()
+                    .sorted(Comparator.comparing(QllInfo::name))
+                    .forEach(library -> report.append("  %s %s%n".formatted(library.name(), library.version().getVersionString())));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * A requirement on a library.
+     *
+     * @param name       The name of the required library
+     * @param version    The versions allowed, or <code>null</code> if any version is allowed
+     * @param requiredBy The library requiring it, or <code>null</code> if it was required by the program itself
+     */
+    public record Requirement(String name, ComparableVersion version, String requiredBy) {
+
+        public static Requirement fromDependency(QilletniInfoData.Dependency dependency, String requiredBy) {
+            return new Requirement(dependency.name(), dependency.version(), requiredBy);
+        }
+
+        public boolean isSatisfiedBy(QllInfo library) {
+            return version == null || version.permitsVersion(library.version());
+        }
+
+        public String describe() {
+            var requirer = Objects.requireNonNullElse(requiredBy, "the program");
+            return version == null ? "required by %s".formatted(requirer) : "%s required by %s".formatted(version, requirer);
+        }
+    }
+
+    /**
+     * The result of a single resolution round.
+     *
+     * @param selection    The picked version of every library
+     * @param requirements Every requirement found, by library name
+     * @param unsatisfied  The requirements of libraries where no installed version satisfies all of them
+     */
+    private record Resolution(Map<String, QllInfo> selection, Map<String, List<Requirement>> requirements, Map<String, List<Requirement>> unsatisfied) {}
+}
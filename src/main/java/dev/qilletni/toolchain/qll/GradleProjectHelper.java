@@ -1,34 +1,69 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.toolchain.FileUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public class GradleProjectHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GradleProjectHelper.class);
 
+    /**
+     * Printed by the init scripts before the path of the project's jar.
+     */
+    private static final String JAR_MARKER = "QILLETNI_JAR=";
+
+    /**
+     * The files that configure a Gradle build, and so may change the jar's path.
+     */
+    private static final List<String> BUILD_FILES = List.of("settings.gradle", "settings.gradle.kts", "build.gradle",
+            "build.gradle.kts", "gradle.properties", ".qilletni_build.properties", "gradle/libs.versions.toml");
+
+    /**
+     * The number of lines of each output stream kept for error reporting.
+     */
+    private static final int MAX_OUTPUT_LINES = 200;
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
     private final ProjectBuildSettings buildSettings;
+    private final Duration taskTimeout;
 
-    private GradleProjectHelper(ProjectBuildSettings buildSettings) {
+    private GradleProjectHelper(ProjectBuildSettings buildSettings, Duration taskTimeout) {
         this.buildSettings = buildSettings;
+        this.taskTimeout = taskTimeout;
     }
 
-    public static Optional<GradleProjectHelper> createProjectHelper(Path projectRoot) {
+    /**
+     * @param projectRoot The root of the Qilletni project
+     * @param taskTimeout The time a Gradle task may take before it is killed
+     * @return The helper, or empty if the project's build settings couldn't be read
+     */
+    public static Optional<GradleProjectHelper> createProjectHelper(Path projectRoot, Duration taskTimeout) {
         var propertiesFile = projectRoot.resolve(".qilletni_build.properties");
 
         if (Files.notExists(propertiesFile)) {
             LOGGER.debug("No .qilletni_build.properties file found in project root: {}", projectRoot.toAbsolutePath());
 
-            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings("", projectRoot.toAbsolutePath())));
+            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings("", projectRoot.toAbsolutePath()), taskTimeout));
         }
 
         try {
@@ -49,7 +84,7 @@ public class GradleProjectHelper {
             LOGGER.debug("Creating GradleProjectHelper with moduleName='{}', rootDir='{}' from properties file: {}",
                     moduleName, rootDir, propertiesFile.toAbsolutePath());
 
-            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings(moduleName, rootDir)));
+            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings(moduleName, rootDir), taskTimeout));
         } catch (IOException e) {
             LOGGER.error("Error reading .qilletni_build.properties file in project root: {}", projectRoot.toAbsolutePath(), e);
             return Optional.empty();
@@ -65,6 +100,20 @@ public class GradleProjectHelper {
      * @return The process result containing exit code and output
      */
     public ProcessResult runGradleTask(boolean verboseGradleOutput, String task, String... args) {
+        return runGradleTask(verboseGradleOutput, line -> {}, task, args);
+    }
+
+    /**
+     * Runs a Gradle task with the specified arguments. Both output streams are drained concurrently as the task runs, so
+     * Gradle can never block on a full pipe, and each line is logged as soon as it is read. Only the last
+     * {@link #MAX_OUTPUT_LINES} lines of each stream are kept in the result.
+     *
+     * @param stdOutListener    Called with every line Gradle prints to stdout, from the thread reading it
+     * @param task              The Gradle task to run
+     * @param args              Additional arguments to pass to Gradle
+     * @return The process result containing exit code and output
+     */
+    public ProcessResult runGradleTask(boolean verboseGradleOutput, Consumer<String> stdOutListener, String task, String... args) {
         try {
             // Determine whether to use gradlew or gradlew.bat based on OS
             var gradleWrapper = System.getProperty("os.name").toLowerCase().contains("win")
@@ -85,102 +134,348 @@ public class GradleProjectHelper {
 
             var process = processBuilder.start();
 
-            var stdOut = new StringBuilder();
-            var stdErr = new StringBuilder();
+            var stdOut = new OutputBuffer(MAX_OUTPUT_LINES);
+            var stdErr = new OutputBuffer(MAX_OUTPUT_LINES);
 
-            try (var reader = process.inputReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseGradleOutput) {
-                        System.out.println(str);
-                    }
-                    
-                    stdOut.append(str);
-                });
-            }
+            var stdOutDrainer = Thread.ofVirtual().name("gradle-stdout").start(() -> drain(process.inputReader(), line -> {
+                if (verboseGradleOutput) {
+                    LOGGER.info("[gradle] {}", line);
+                } else {
+                    LOGGER.debug("[gradle] {}", line);
+                }
 
-            try (var reader = process.errorReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseGradleOutput) {
-                        System.err.println(str);
-                    }
+                stdOut.add(line);
+                stdOutListener.accept(line);
+            }));
+
+            var stdErrDrainer = Thread.ofVirtual().name("gradle-stderr").start(() -> drain(process.errorReader(), line -> {
+                if (verboseGradleOutput) {
+                    LOGGER.warn("[gradle] {}", line);
+                } else {
+                    LOGGER.debug("[gradle] {}", line);
+                }
+
+                stdErr.add(line);
+            }));
+
+            boolean completed;
 
-                    stdErr.append(str);
-                });
+            try {
+                completed = process.waitFor(taskTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                destroyProcessTree(process);
+                throw e;
             }
 
-            boolean completed = process.waitFor(1, TimeUnit.MINUTES);
             if (!completed) {
-                process.destroyForcibly();
-                return new ProcessResult(-1, "Process timed out after 1 minute", stdErr.toString());
+                destroyProcessTree(process);
+            }
+
+            // The streams reach their end once the process exits, so the drainers finish shortly after
+            stdOutDrainer.join(DRAIN_TIMEOUT);
+            stdErrDrainer.join(DRAIN_TIMEOUT);
+
+            if (!completed) {
+                LOGGER.error("Gradle task {} timed out after {}", task, taskTimeout);
+                return new ProcessResult(-1, stdOut.toString(), "Process timed out after %s\n%s".formatted(taskTimeout, stdErr));
             }
 
             return new ProcessResult(process.exitValue(), stdOut.toString(), stdErr.toString());
 
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             LOGGER.error("Error while running Gradle task: {}", task, e);
             return new ProcessResult(-1, "", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while running Gradle task: {}", task, e);
+            return new ProcessResult(-1, "", e.getMessage());
         }
     }
 
+    private static void drain(BufferedReader reader, Consumer<String> lineConsumer) {
+        try (reader) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineConsumer.accept(line);
+            }
+        } catch (IOException e) {
+            // The stream is closed when a timed out process is destroyed
+            LOGGER.debug("Stopped reading Gradle output", e);
+        }
+    }
+
+    private static void destroyProcessTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
     /**
-     * Runs the shadowJar task.
+     * Builds the project's jar with the shadowJar task, reporting where it was written in the same Gradle invocation.
+     * The reported path is cached for {@link #findProjectJar(boolean)}.
      *
      * @param verboseGradleOutput Whether to print verbose output from Gradle
-     * @return The process result containing exit code and output
+     * @return The path of the built jar file, or empty if the build failed
+     */
+    public Optional<Path> buildProjectJar(boolean verboseGradleOutput) {
+        return Optional.ofNullable(buildProjectJars(List.of(this), verboseGradleOutput).get(this));
+    }
+
+    /**
+     * Builds the jars of several projects in the same Gradle build with a single Gradle invocation running each of
+     * their shadowJar tasks, so the build is only configured once. Gradle keeps running the other tasks if one fails.
+     * The reported paths are cached for {@link #findProjectJar(boolean)}.
+     *
+     * @param projectHelpers      The helpers of the projects, which must all have the same root directory
+     * @param verboseGradleOutput Whether to print verbose output from Gradle
+     * @return The path of each built jar file, keyed by the helper of its project. Projects that failed to build are
+     *         missing
      */
-    public ProcessResult runShadowJarTask(boolean verboseGradleOutput) {
-        return runGradleTask(verboseGradleOutput, "%s:shadowJar".formatted(buildSettings.moduleName()));
+    public static Map<GradleProjectHelper, Path> buildProjectJars(List<GradleProjectHelper> projectHelpers, boolean verboseGradleOutput) {
+        var rootDir = projectHelpers.getFirst().getRootDir();
+
+        if (projectHelpers.stream().anyMatch(projectHelper -> !projectHelper.getRootDir().equals(rootDir))) {
+            throw new IllegalArgumentException("Every project must be in the Gradle build at " + rootDir);
+        }
+
+        var projectPaths = projectHelpers.stream()
+                .map(projectHelper -> "'%s'".formatted(projectHelper.getProjectPath()))
+                .distinct()
+                .collect(Collectors.joining(", "));
+
+        var reportScript = "def paths = [%s] as Set; gradle.taskGraph.afterTask { t, state -> if (t.name == 'shadowJar' && state.failure == null && paths.contains(t.project.path)) println '%s' + t.project.path + '=' + t.archiveFile.get().asFile }"
+                .formatted(projectPaths, JAR_MARKER);
+
+        var tasks = projectHelpers.stream()
+                .map(projectHelper -> "%s:shadowJar".formatted(projectHelper.buildSettings.moduleName()))
+                .distinct()
+                .toList();
+
+        var reportedJars = projectHelpers.getFirst().runWithInitScript(verboseGradleOutput, reportScript, tasks);
+        var builtJars = new HashMap<GradleProjectHelper, Path>();
+
+        for (var projectHelper : projectHelpers) {
+            var jarPath = reportedJars.get(projectHelper.getProjectPath());
+
+            if (jarPath != null) {
+                projectHelper.cacheJarPath(jarPath);
+                builtJars.put(projectHelper, jarPath);
+            }
+        }
+
+        return builtJars;
     }
 
     /**
-     * Finds the jar file that will be created (or has been created) in the project in the given path.
+     * Finds the jar file that will be created (or has been created) in the project in the given path, without building
+     * it. The path is cached until any of the project's build files change, otherwise Gradle only configures the
+     * project to find it.
      *
      * @param verboseGradleOutput Whether to print verbose output from Gradle
      * @return The path of the jar file
      */
     public Optional<Path> findProjectJar(boolean verboseGradleOutput) {
-        Path jarFindScript = null;
+        var cachedJar = readCachedJarPath();
+
+        if (cachedJar.isPresent()) {
+            LOGGER.debug("Using cached jar path {}", cachedJar.get());
+            return cachedJar;
+        }
+
+        var reportScript = "gradle.projectsEvaluated { g -> def t = g.rootProject.findProject('%s')?.tasks?.findByName('shadowJar'); if (t != null) println '%s' + t.project.path + '=' + t.archiveFile.get().asFile }"
+                .formatted(getProjectPath(), JAR_MARKER);
+
+        // help is the cheapest task that still configures every project
+        var jarPath = Optional.ofNullable(runWithInitScript(verboseGradleOutput, reportScript, List.of("help")).get(getProjectPath()));
+        jarPath.ifPresent(this::cacheJarPath);
+
+        return jarPath;
+    }
+
+    /**
+     * Runs Gradle tasks with an init script that prints {@link #JAR_MARKER}, a project's path, <code>=</code> and the
+     * path of its jar, and reads every reported jar.
+     *
+     * @return The reported jars, keyed by the Gradle path of their project
+     */
+    private Map<String, Path> runWithInitScript(boolean verboseGradleOutput, String script, List<String> tasks) {
+        Path initScript = null;
 
         try {
-            jarFindScript = Files.createTempFile("qilletni-gradle-jar-find", ".groovy");
-            Files.writeString(jarFindScript, "gradle.taskGraph.afterTask { t, _ -> if (t.name == 'shadowJar') println t.archiveFile.get() }");
-
-            // Run the shadowJar task with the script to find the jar file
-            ProcessResult result = runGradleTask(
-                    verboseGradleOutput,
-                    "%s:shadowJar".formatted(buildSettings.moduleName()),
-                    "--console=plain",
-                    "--quiet",
-                    "-I",
-                    jarFindScript.toString()
-            );
-
-            if (result.exitCode != 0 || result.stdOut.isEmpty()) {
-                if (!result.stdErr.isEmpty()) {
-                    LOGGER.error("Gradle error output: {}", result.stdErr);
-                }
-                return Optional.empty();
+            initScript = Files.createTempFile("qilletni-gradle-jar-find", ".groovy");
+            Files.writeString(initScript, script);
+
+            var args = new ArrayList<>(tasks.subList(1, tasks.size()));
+            args.add("--console=plain");
+            args.add("--continue");
+
+            if (!verboseGradleOutput) {
+                args.add("--quiet");
             }
 
-            return Optional.of(Path.of(result.stdOut));
+            args.add("-I");
+            args.add(initScript.toString());
 
+            // Markers are caught as they're printed, as only the end of the output is kept
+            var reportedJars = new ConcurrentHashMap<String, Path>();
+            var result = runGradleTask(verboseGradleOutput, line -> {
+                if (line.startsWith(JAR_MARKER)) {
+                    var report = line.substring(JAR_MARKER.length()).trim();
+                    var separator = report.indexOf('=');
+
+                    if (separator != -1) {
+                        reportedJars.put(report.substring(0, separator), Path.of(report.substring(separator + 1)));
+                    }
+                }
+            }, tasks.getFirst(), args.toArray(String[]::new));
+
+            if (result.exitCode() != 0 && !result.stdErr().isEmpty()) {
+                LOGGER.error("Gradle error output: {}", result.stdErr());
+            }
+
+            return reportedJars;
         } catch (IOException e) {
             LOGGER.error("Error while finding the jar file", e);
-            return Optional.empty();
+            return Map.of();
         } finally {
-            if (jarFindScript != null) {
+            if (initScript != null) {
                 try {
-                    Files.deleteIfExists(jarFindScript);
+                    Files.deleteIfExists(initScript);
                 } catch (IOException ignored) {}
             }
         }
     }
 
+    /**
+     * @return The Gradle path of the project, such as <code>:qilletni-spotify</code>, or <code>:</code> for the root
+     */
+    private String getProjectPath() {
+        return buildSettings.moduleName().isEmpty() ? ":" : buildSettings.moduleName();
+    }
+
+    private Optional<Path> readCachedJarPath() {
+        var cacheFile = getJarCacheFile();
+
+        if (Files.notExists(cacheFile)) {
+            return Optional.empty();
+        }
+
+        try (var is = Files.newInputStream(cacheFile)) {
+            var properties = new Properties();
+            properties.load(is);
+
+            if (!fingerprintBuildFiles().equals(properties.getProperty("fingerprint"))) {
+                LOGGER.debug("Build files have changed since the jar path was cached");
+                return Optional.empty();
+            }
+
+            return Optional.ofNullable(properties.getProperty("jar")).map(Path::of);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Unable to read cached jar path from {}", cacheFile, e);
+            return Optional.empty();
+        }
+    }
+
+    private void cacheJarPath(Path jarPath) {
+        var cacheFile = getJarCacheFile();
+
+        try {
+            var properties = new Properties();
+            properties.setProperty("fingerprint", fingerprintBuildFiles());
+            properties.setProperty("jar", jarPath.toAbsolutePath().toString());
+
+            Files.createDirectories(cacheFile.getParent());
+
+            try (var os = Files.newOutputStream(cacheFile)) {
+                properties.store(os, "Qilletni shadowJar output path");
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Unable to cache jar path in {}", cacheFile, e);
+        }
+    }
+
+    /**
+     * @return The file caching the jar path of this project, in Gradle's own project cache directory
+     */
+    private Path getJarCacheFile() {
+        var projectName = buildSettings.moduleName().isEmpty() ? "root" : buildSettings.moduleName().substring(1).replace(':', '-');
+        return buildSettings.rootDir().resolve(".gradle").resolve("qilletni").resolve("jar-%s.properties".formatted(projectName));
+    }
+
+    /**
+     * Hashes every build file that could change where the jar is written.
+     */
+    private String fingerprintBuildFiles() throws IOException {
+        var directories = new ArrayList<Path>();
+        directories.add(buildSettings.rootDir());
+
+        if (!buildSettings.moduleName().isEmpty()) {
+            directories.add(buildSettings.rootDir().resolve(buildSettings.moduleName().substring(1).replace(':', '/')));
+        }
+
+        var fingerprint = new StringBuilder();
+
+        for (var directory : directories) {
+            for (var fileName : BUILD_FILES) {
+                var file = directory.resolve(fileName);
+
+                if (Files.isRegularFile(file)) {
+                    fingerprint.append(file).append('=').append(FileUtil.hashFile(file)).append('\n');
+                }
+            }
+        }
+
+        return FileUtil.hashString(fingerprint.toString());
+    }
+
+    /**
+     * @return The absolute root directory of the Gradle build, where the wrapper is run
+     */
+    public Path getRootDir() {
+        return buildSettings.rootDir();
+    }
+
     public static boolean isGradleProject(Path pathToProjectRoot) {
         return Files.exists(pathToProjectRoot.resolve(".qilletni_build.properties")) ||
                 Files.exists(pathToProjectRoot.resolve("build.gradle"));
     }
 
+    /**
+     * Keeps the last lines of an output stream. Lines are added from the thread draining the stream, so access is
+     * synchronized.
+     */
+    private static class OutputBuffer {
+
+        private final int maxLines;
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private int droppedLines;
+
+        OutputBuffer(int maxLines) {
+            this.maxLines = maxLines;
+        }
+
+        synchronized void add(String line) {
+            if (lines.size() == maxLines) {
+                lines.removeFirst();
+                droppedLines++;
+            }
+
+            lines.addLast(line);
+        }
+
+        @Override
+        public synchronized String toString() {
+            var output = new StringBuilder();
+
+            if (droppedLines > 0) {
+                output.append("... (%d earlier lines omitted)%n".formatted(droppedLines));
+            }
+
+            lines.forEach(line -> output.append(line).append('\n'));
+
+            return output.toString();
+        }
+    }
+
     /**
      * Represents the result of a process execution.
      */
@@ -5,7 +5,10 @@ import dev.qilletni.api.lib.qll.QllInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LibraryValidator {
     
@@ -13,24 +16,36 @@ public class LibraryValidator {
     
     private final List<QllInfo> libraries;
 
+    /**
+     * The loaded libraries of each name, so dependencies are looked up without scanning every library.
+     */
+    private final Map<String, List<QllInfo>> librariesByName = new HashMap<>();
+
     public LibraryValidator(List<QllInfo> libraries) {
         this.libraries = libraries;
+
+        for (var library : libraries) {
+            librariesByName.computeIfAbsent(library.name(), key -> new ArrayList<>()).add(library);
+        }
     }
     
     private boolean hasDependencyMet(QllInfo qllInfo, QilletniInfoData.Dependency dependency) {
-        for (var library : libraries) {
-            if (library.name().equals(dependency.name())) {
-                if (dependency.version().permitsVersion(library.version())) {
-                    LOGGER.debug("[{}] Dependency '{}' version {} matches required version {}", qllInfo.name(), dependency.name(), library.version(), dependency.version());
-                    return true;
-                }
-                
-                LOGGER.error("[{}] Dependency '{}' version {} does not match required version {}", qllInfo.name(), dependency.name(), library.version(), dependency.version());
-                return false;
+        var candidates = librariesByName.get(dependency.name());
+
+        if (candidates == null) {
+            LOGGER.error("[{}] Dependency '{}' not found!", qllInfo.name(), dependency.name());
+            return false;
+        }
+
+        for (var library : candidates) {
+            if (dependency.version().permitsVersion(library.version())) {
+                LOGGER.debug("[{}] Dependency '{}' version {} matches required version {}", qllInfo.name(), dependency.name(), library.version(), dependency.version());
+                return true;
             }
         }
-        
-        LOGGER.error("[{}] Dependency '{}' not found!", qllInfo.name(), dependency.name());
+
+        var versions = candidates.stream().map(library -> library.version().getVersionString()).toList();
+        LOGGER.error("[{}] Dependency '{}' version(s) {} do not match required version {}", qllInfo.name(), dependency.name(), versions, dependency.version());
         return false;
     }
     
@@ -0,0 +1,118 @@
+package dev.qilletni.toolchain.qll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the sources of a local library from its <code>qilletni-src</code> directory. Sources are read the first
+ * time they are imported and cached after that, until they are invalidated because the file changed.
+ */
+public class LocalSourceResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalSourceResolver.class);
+
+    private final Path sourcePath;
+
+    /**
+     * The files of the library. key: Qilletni file path,  value = actual file path
+     */
+    private final Map<String, Path> sourceMap = new ConcurrentHashMap<>();
+
+    private final Map<String, String> sourceCache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a resolver, finding every <code>.ql</code> file currently in the source directory.
+     *
+     * @param sourcePath The <code>qilletni-src</code> directory of the library
+     */
+    public LocalSourceResolver(Path sourcePath) throws IOException {
+        // Changes are reported with absolute, normalized paths, so sources are kept the same way to match them
+        this.sourcePath = sourcePath.toAbsolutePath().normalize();
+
+        try (var walk = Files.walk(this.sourcePath)) {
+            walk.filter(Predicate.not(Files::isDirectory))
+                    .filter(path -> path.getFileName().toString().endsWith(".ql"))
+                    .forEach(entry -> {
+                        String relative = toImportPath(entry);
+
+                        LOGGER.debug("Entry: {} is of: {}, {}", entry, entry.getFileName(), relative);
+                        sourceMap.put(relative, entry);
+                    });
+        }
+    }
+
+    /**
+     * Gets the contents of a source file in the library.
+     *
+     * @param importPath The path of the source, relative to <code>qilletni-src</code>
+     * @return The contents of the file, or <code>null</code> if it doesn't exist or couldn't be read
+     */
+    public String resolveSource(String importPath) {
+        var actualPath = sourceMap.get(importPath);
+
+        if (actualPath == null) {
+            return null;
+        }
+
+        try {
+            return sourceCache.computeIfAbsent(importPath, path -> {
+                try {
+                    return Files.readString(actualPath);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            LOGGER.error("Failed to read local library file: {}", actualPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the cached contents of a changed file, so it is read again on its next import. Created files become
+     * importable and deleted files stop being importable.
+     *
+     * @param changedFile The file that was created, changed or deleted
+     * @return If the file is a source of this library
+     */
+    public boolean invalidate(Path changedFile) {
+        changedFile = changedFile.toAbsolutePath().normalize();
+
+        if (!changedFile.startsWith(sourcePath) || !changedFile.getFileName().toString().endsWith(".ql")) {
+            return false;
+        }
+
+        var importPath = toImportPath(changedFile);
+
+        if (Files.isRegularFile(changedFile)) {
+            sourceMap.put(importPath, changedFile);
+        } else {
+            sourceMap.remove(importPath);
+        }
+
+        sourceCache.remove(importPath);
+
+        LOGGER.debug("Invalidated local library file {}", importPath);
+
+        return true;
+    }
+
+    /**
+     * @return The <code>qilletni-src</code> directory of the library
+     */
+    public Path getSourcePath() {
+        return sourcePath;
+    }
+
+    private String toImportPath(Path file) {
+        return sourcePath.relativize(file).toString().replace("\\", "/");
+    }
+}
@@ -0,0 +1,368 @@
+package dev.qilletni.toolchain.qll;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A zip archive read straight out of a {@link ByteBuffer}, usually a memory mapped file. Only the central directory is
+ * parsed up front, and entries are read from the buffer on demand. A stored entry can itself be opened as a
+ * {@link MappedZip} without copying it, which is how a <code>native.jar</code> is read directly out of a .qll.
+ */
+public class MappedZip {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private final String name;
+    private final ByteBuffer buffer;
+
+    /**
+     * The file entries of the archive, keyed by their name. Directories are not included.
+     */
+    private final Map<String, Entry> entries;
+
+    private MappedZip(String name, ByteBuffer buffer, Map<String, Entry> entries) {
+        this.name = name;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Memory maps a zip file and reads its central directory.
+     *
+     * @param zipPath The path of the zip file
+     * @return The mapped archive
+     */
+    public static MappedZip open(Path zipPath) throws IOException {
+        try (var channel = FileChannel.open(zipPath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException("%s is too large to be mapped".formatted(zipPath));
+            }
+
+            // The mapping stays valid after the channel is closed
+            return of(zipPath.getFileName().toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the central directory of a zip held in a buffer.
+     *
+     * @param name   The name of the archive, used in URLs and error messages
+     * @param buffer The buffer holding the whole archive, from position 0 to its limit
+     * @return The archive
+     */
+    public static MappedZip of(String name, ByteBuffer buffer) throws IOException {
+        var zipBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            return new MappedZip(name, zipBuffer, readCentralDirectory(name, zipBuffer));
+        } catch (IndexOutOfBoundsException | ArithmeticException e) {
+            throw new ZipException("Malformed zip %s".formatted(name));
+        }
+    }
+
+    /**
+     * @return The name of the archive
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Every file entry in the archive, keyed by name
+     */
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param entryName The name of the entry, such as <code>dev/qilletni/Foo.class</code>
+     * @return The entry, or empty if the archive doesn't contain it
+     */
+    public Optional<Entry> getEntry(String entryName) {
+        return Optional.ofNullable(entries.get(entryName));
+    }
+
+    /**
+     * Reads and, if needed, inflates the contents of an entry.
+     *
+     * @param entry The entry of this archive to read
+     * @return The uncompressed contents
+     */
+    public byte[] readEntry(Entry entry) throws IOException {
+        var data = getRawData(entry);
+
+        return switch (entry.method()) {
+            case ZipEntry.STORED -> {
+                var bytes = new byte[data.remaining()];
+                data.get(bytes);
+                yield bytes;
+            }
+            case ZipEntry.DEFLATED -> inflate(entry, data);
+            default -> throw new ZipException("Unsupported compression method %d for %s in %s".formatted(entry.method(), entry.name(), name));
+        };
+    }
+
+    /**
+     * Opens a stream of the uncompressed contents of an entry. Stored entries are streamed straight out of the buffer.
+     *
+     * @param entry The entry of this archive to read
+     * @return The stream of the entry
+     */
+    public InputStream openEntry(Entry entry) throws IOException {
+        if (entry.method() == ZipEntry.STORED) {
+            return new BufferInputStream(getRawData(entry));
+        }
+
+        return new ByteArrayInputStream(readEntry(entry));
+    }
+
+    /**
+     * Opens a stored (uncompressed) entry which is a zip itself, such as a jar, without copying it out of this archive.
+     *
+     * @param entry The stored entry of this archive
+     * @param nestedName The name to give the nested archive
+     * @return The nested archive
+     */
+    public MappedZip openNested(Entry entry, String nestedName) throws IOException {
+        if (entry.method() != ZipEntry.STORED) {
+            throw new ZipException("%s in %s is compressed and can't be read in place".formatted(entry.name(), name));
+        }
+
+        return of(nestedName, getRawData(entry));
+    }
+
+    /**
+     * Gets the data of an entry as it is stored in the archive, which is compressed for deflated entries.
+     */
+    private ByteBuffer getRawData(Entry entry) throws ZipException {
+        try {
+            var localHeader = entry.localHeaderOffset();
+
+            if (buffer.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for %s in %s".formatted(entry.name(), name));
+            }
+
+            // The local header's name and extra field lengths may differ from the central directory's
+            var dataOffset = localHeader + LOCAL_HEADER_SIZE + Short.toUnsignedInt(buffer.getShort(localHeader + 26)) + Short.toUnsignedInt(buffer.getShort(localHeader + 28));
+
+            return buffer.slice(dataOffset, Math.toIntExact(entry.compressedSize())).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IndexOutOfBoundsException | ArithmeticException e) {
+            throw new ZipException("Entry %s extends past the end of %s".formatted(entry.name(), name));
+        }
+    }
+
+    private byte[] inflate(Entry entry, ByteBuffer data) throws ZipException {
+        var inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(data);
+
+            var bytes = new byte[Math.toIntExact(entry.size())];
+            var offset = 0;
+            var paddedInput = false;
+
+            while (offset < bytes.length && !inflater.finished()) {
+                var inflated = inflater.inflate(bytes, offset, bytes.length - offset);
+                offset += inflated;
+
+                if (inflated == 0 && inflater.needsInput()) {
+                    // Raw deflate streams may need a trailing dummy byte to be completed
+                    if (paddedInput) {
+                        break;
+                    }
+
+                    inflater.setInput(new byte[1]);
+                    paddedInput = true;
+                } else if (inflated == 0 && inflater.needsDictionary()) {
+                    break;
+                }
+            }
+
+            if (offset != bytes.length) {
+                throw new ZipException("Truncated entry %s in %s".formatted(entry.name(), name));
+            }
+
+            return bytes;
+        } catch (DataFormatException | ArithmeticException e) {
+            throw new ZipException("Unable to inflate %s in %s: %s".formatted(entry.name(), name, e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Map<String, Entry> readCentralDirectory(String name, ByteBuffer buffer) throws ZipException {
+        var endOffset = findEndOfCentralDirectory(buffer);
+
+        if (endOffset == -1) {
+            throw new ZipException("No end of central directory found in %s".formatted(name));
+        }
+
+        long entryCount = Short.toUnsignedInt(buffer.getShort(endOffset + 10));
+        long directoryOffset = Integer.toUnsignedLong(buffer.getInt(endOffset + 16));
+
+        // Archives with many entries, like large shaded jars, use the zip64 end record for these
+        var locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+        if (locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+            var zip64EndOffset = Math.toIntExact(buffer.getLong(locatorOffset + 8));
+
+            if (buffer.getInt(zip64EndOffset) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory in %s".formatted(name));
+            }
+
+            entryCount = buffer.getLong(zip64EndOffset + 32);
+            directoryOffset = buffer.getLong(zip64EndOffset + 48);
+        }
+
+        var entries = new HashMap<String, Entry>();
+        var offset = Math.toIntExact(directoryOffset);
+
+        for (long i = 0; i < entryCount; i++) {
+            if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in %s".formatted(name));
+            }
+
+            var method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+            var nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            var extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+            var commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+
+            var nameBytes = new byte[nameLength];
+            buffer.get(offset + CENTRAL_HEADER_SIZE, nameBytes);
+            var entryName = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Values too large for the header are stored in the zip64 extra field, in this order
+            var extraOffset = offset + CENTRAL_HEADER_SIZE + nameLength;
+            var extraEnd = extraOffset + extraLength;
+            while (extraOffset + 4 <= extraEnd) {
+                var id = Short.toUnsignedInt(buffer.getShort(extraOffset));
+                var length = Short.toUnsignedInt(buffer.getShort(extraOffset + 2));
+
+                if (id == ZIP64_EXTRA_ID) {
+                    var valueOffset = extraOffset + 4;
+
+                    if (size == 0xFFFFFFFFL) {
+                        size = buffer.getLong(valueOffset);
+                        valueOffset += 8;
+                    }
+
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = buffer.getLong(valueOffset);
+                        valueOffset += 8;
+                    }
+
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = buffer.getLong(valueOffset);
+                    }
+
+                    break;
+                }
+
+                extraOffset += 4 + length;
+            }
+
+            if (!entryName.endsWith("/")) {
+                entries.put(entryName, new Entry(entryName, method, compressedSize, size, Math.toIntExact(localHeaderOffset)));
+            }
+
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) {
+        // The end record is followed by a comment of at most 65535 bytes
+        var minimumOffset = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+
+        for (int offset = buffer.limit() - END_SIZE; offset >= minimumOffset; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads a buffer from its position to its limit, without copying it.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            var skipped = (int) Math.min(Math.max(count, 0), buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * A file entry in a {@link MappedZip}.
+     *
+     * @param name              The full name of the entry
+     * @param method            The compression method, either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @param compressedSize    The size of the entry's data in the archive
+     * @param size              The uncompressed size of the entry
+     * @param localHeaderOffset The offset of the entry's local header in the archive
+     */
+    public record Entry(String name, int method, long compressedSize, long size, int localHeaderOffset) {}
+}
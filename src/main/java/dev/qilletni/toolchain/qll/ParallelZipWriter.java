@@ -0,0 +1,239 @@
+package dev.qilletni.toolchain.qll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip whose entries are compressed concurrently. Each entry is deflated on its own into memory, and the
+ * compressed entries are then written in the order they were given along with a central directory. Only a bounded
+ * window of entries is compressed ahead of the writer, so memory use doesn't grow with the size of the library.
+ */
+class ParallelZipWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelZipWriter.class);
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 0x0800;
+
+    /**
+     * Zip64 isn't written, so archives have to stay below these limits. Sequential packaging has no such limit.
+     */
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final int compressionLevel;
+    private final int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param compressionLevel The deflate level from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    ParallelZipWriter(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the given entries to a zip, in the order they are given.
+     *
+     * @param entries     The entries to write
+     * @param destination The zip file to write
+     */
+    void write(List<QllPackager.PackageEntry> entries, Path destination) throws IOException {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new ZipException("Too many entries to package in parallel: " + entries.size());
+        }
+
+        LOGGER.debug("Compressing {} entries on {} threads", entries.size(), threads);
+
+        var dosTime = toDosTime();
+        var centralDirectory = new ByteArrayOutputStream();
+        long offset = 0;
+
+        // Compression is CPU bound, so this uses a thread per core rather than virtual threads
+        try (var executor = Executors.newFixedThreadPool(threads);
+             var os = new BufferedOutputStream(Files.newOutputStream(destination), QllPackager.OUTPUT_BUFFER_SIZE)) {
+            var window = threads * 2;
+            var futures = new ArrayList<Future<CompressedEntry>>(entries.size());
+
+            for (int i = 0; i < entries.size(); i++) {
+                // Keep up to a window of entries compressing ahead of the one being written
+                while (futures.size() < entries.size() && futures.size() < i + window) {
+                    var entry = entries.get(futures.size());
+                    futures.add(executor.submit(() -> compress(entry)));
+                }
+
+                var compressedEntry = futures.get(i).get();
+                futures.set(i, null);
+
+                if (offset > MAX_SIZE || compressedEntry.compressedSize() > MAX_SIZE) {
+                    throw new ZipException("Library is too large to package in parallel");
+                }
+
+                var nameBytes = compressedEntry.name().getBytes(StandardCharsets.UTF_8);
+
+                os.write(createLocalHeader(compressedEntry, nameBytes, dosTime));
+
+                // Stored entries aren't held in memory, they're copied from their source as they're written
+                if (compressedEntry.compressed() != null) {
+                    os.write(compressedEntry.compressed());
+                } else {
+                    entries.get(i).writeTo(os);
+                }
+
+                centralDirectory.write(createCentralHeader(compressedEntry, nameBytes, dosTime, offset));
+
+                offset += 30 + nameBytes.length + compressedEntry.compressedSize();
+            }
+
+            if (offset > MAX_SIZE) {
+                throw new ZipException("Library is too large to package in parallel");
+            }
+
+            centralDirectory.writeTo(os);
+            os.write(createEnd(entries.size(), centralDirectory.size(), offset));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+
+            throw new IOException("Unable to compress entry", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while packaging", e);
+        }
+    }
+
+    private CompressedEntry compress(QllPackager.PackageEntry entry) throws IOException {
+        var crc = new CRC32();
+
+        if (entry.stored()) {
+            try (var is = new CheckedInputStream(entry.openStream(), crc)) {
+                is.transferTo(OutputStream.nullOutputStream());
+            }
+
+            return new CompressedEntry(entry.name(), ZipEntry.STORED, crc.getValue(), entry.size(), entry.size(), null);
+        }
+
+        var data = entry.readAllBytes();
+        crc.update(data);
+
+        var deflater = new Deflater(compressionLevel, true);
+
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            var compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            var buffer = new byte[8192];
+
+            while (!deflater.finished()) {
+                var length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+
+            var compressedBytes = compressed.toByteArray();
+            return new CompressedEntry(entry.name(), ZipEntry.DEFLATED, crc.getValue(), data.length, compressedBytes.length, compressedBytes);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] createLocalHeader(CompressedEntry entry, byte[] nameBytes, int dosTime) {
+        var header = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method());
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc());
+        header.putInt((int) entry.compressedSize());
+        header.putInt((int) entry.size());
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) 0);
+        header.put(nameBytes);
+        return header.array();
+    }
+
+    private byte[] createCentralHeader(CompressedEntry entry, byte[] nameBytes, int dosTime, long localHeaderOffset) {
+        var header = ByteBuffer.allocate(46 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) VERSION);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method());
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc());
+        header.putInt((int) entry.compressedSize());
+        header.putInt((int) entry.size());
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) 0); // extra field length
+        header.putShort((short) 0); // comment length
+        header.putShort((short) 0); // disk number
+        header.putShort((short) 0); // internal attributes
+        header.putInt(0); // external attributes
+        header.putInt((int) localHeaderOffset);
+        header.put(nameBytes);
+        return header.array();
+    }
+
+    private byte[] createEnd(int entryCount, int centralDirectorySize, long centralDirectoryOffset) {
+        var end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entryCount);
+        end.putShort((short) entryCount);
+        end.putInt(centralDirectorySize);
+        end.putInt((int) centralDirectoryOffset);
+        end.putShort((short) 0);
+        return end.array();
+    }
+
+    /**
+     * @return {@link QllPackager#ENTRY_TIME} as a DOS date in the high 16 bits and DOS time in the low 16 bits
+     */
+    private static int toDosTime() {
+        var time = QllPackager.ENTRY_TIME;
+
+        var dosDate = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        var dosTime = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+
+        return (dosDate << 16) | dosTime;
+    }
+
+    /**
+     * An entry that has been compressed, ready to be written.
+     *
+     * @param name           The name of the entry
+     * @param method         {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @param crc            The CRC-32 of the uncompressed data
+     * @param size           The uncompressed size
+     * @param compressedSize The size of the data as written to the zip
+     * @param compressed     The data as written to the zip, or <code>null</code> for stored entries which are copied
+     *                       from their source
+     */
+    private record CompressedEntry(String name, int method, long crc, long size, long compressedSize, byte[] compressed) {}
+}
@@ -4,36 +4,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public class QilletniSourceHandler {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(QilletniSourceHandler.class);
 
-    public void moveQilletniSource(Path outPath, Path qilletniSourcePath) throws IOException {
-        var sourceOutDir = outPath.resolve("qilletni-src");
-        Files.createDirectories(sourceOutDir);
+    /**
+     * Finds all <code>.ql</code> files in a Qilletni source directory.
+     *
+     * @param qilletniSourcePath The <code>qilletni-src</code> directory
+     * @return The source files keyed by their path relative to the source directory, always using <code>/</code> as
+     *         the separator, in sorted order
+     */
+    public SortedMap<String, Path> findQilletniSources(Path qilletniSourcePath) throws IOException {
+        var sources = new TreeMap<String, Path>();
 
         try (var walk = Files.walk(qilletniSourcePath, FileVisitOption.FOLLOW_LINKS)) {
-            var filesMoved = walk.filter(path -> path.getFileName().toString().endsWith(".ql"))
-                    .map(qilletniFile -> {
-                        var relativeBuildDir = qilletniSourcePath.relativize(qilletniFile);
-                        var classTarget = sourceOutDir.resolve(relativeBuildDir);
-
-                        try {
-                            Files.createDirectories(classTarget.getParent());
-                            Files.copy(qilletniFile, classTarget);
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
+            walk.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".ql"))
+                    .forEach(path -> sources.put(qilletniSourcePath.relativize(path).toString().replace("\\", "/"), path));
+        }
 
-                        return 1;
-                    }).mapToInt(i -> i).sum();
+        LOGGER.debug("Found {} .ql files in {}", sources.size(), qilletniSourcePath.toAbsolutePath());
 
-            LOGGER.debug("Moved {} .class files to {}", filesMoved, sourceOutDir.toAbsolutePath());
-        }
+        return sources;
     }
 }
@@ -0,0 +1,190 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * A read-only view of a .qll library, which maps the archive a single time. The central directory is read once when
+ * the archive is opened, and everything the toolchain needs from a .qll (the <code>qll.info</code>, the
+ * <code>qilletni-src</code> sources and the <code>native.jar</code>) is read from that one mapping.
+ */
+public class QllArchive implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QllArchive.class);
+
+    private static final String QLL_INFO_ENTRY = "qll.info";
+    private static final String NATIVE_JAR_ENTRY = "native.jar";
+    private static final String SOURCE_DIRECTORY = "qilletni-src/";
+
+    private final Path qllPath;
+    private final MappedZip mappedQll;
+
+    private final MappedZip.Entry qllInfoEntry;
+    private final MappedZip.Entry nativeJarEntry;
+
+    /**
+     * The <code>.ql</code> entries in <code>qilletni-src</code>, keyed by their path relative to it.
+     */
+    private final Map<String, MappedZip.Entry> sourceEntries;
+
+    private QllArchive(Path qllPath, MappedZip mappedQll, MappedZip.Entry qllInfoEntry, MappedZip.Entry nativeJarEntry, Map<String, MappedZip.Entry> sourceEntries) {
+        this.qllPath = qllPath;
+        this.mappedQll = mappedQll;
+        this.qllInfoEntry = qllInfoEntry;
+        this.nativeJarEntry = nativeJarEntry;
+        this.sourceEntries = sourceEntries;
+    }
+
+    /**
+     * Opens a .qll and indexes its entries.
+     *
+     * @param qllPath The path of the .qll library
+     * @return The opened archive, which must be closed
+     */
+    public static QllArchive open(Path qllPath) throws IOException {
+        var mappedQll = MappedZip.open(qllPath);
+
+        MappedZip.Entry qllInfoEntry = null;
+        MappedZip.Entry nativeJarEntry = null;
+        var sourceEntries = new TreeMap<String, MappedZip.Entry>();
+
+        // Directories aren't included in the mapped entries
+        for (var entry : mappedQll.getEntries().values()) {
+            // Libraries packaged on Windows may use backslashes as separators
+            var normalizedName = entry.name().replace("\\", "/");
+
+            if (normalizedName.equals(QLL_INFO_ENTRY)) {
+                qllInfoEntry = entry;
+            } else if (normalizedName.equals(NATIVE_JAR_ENTRY)) {
+                nativeJarEntry = entry;
+            } else if (normalizedName.startsWith(SOURCE_DIRECTORY) && normalizedName.endsWith(".ql")) {
+                var relative = normalizedName.substring(SOURCE_DIRECTORY.length());
+
+                LOGGER.debug("Entry: {} is of: {}", entry.name(), relative);
+                sourceEntries.put(relative, entry);
+            }
+        }
+
+        if (qllInfoEntry == null) {
+            throw new FileNotFoundException("No " + QLL_INFO_ENTRY + " found in " + qllPath);
+        }
+
+        return new QllArchive(qllPath, mappedQll, qllInfoEntry, nativeJarEntry, Collections.unmodifiableMap(sourceEntries));
+    }
+
+    /**
+     * @return The path of the .qll on disk
+     */
+    public Path getPath() {
+        return qllPath;
+    }
+
+    /**
+     * Reads and parses the <code>qll.info</code> of the library.
+     *
+     * @return The library's {@link QllInfo}
+     */
+    public QllInfo readQllInfo() throws IOException {
+        try (var is = mappedQll.openEntry(qllInfoEntry)) {
+            return new QllInfoGenerator().readQllInfo(is);
+        }
+    }
+
+    /**
+     * @return The <code>.ql</code> sources in the library, keyed by their path relative to <code>qilletni-src</code>
+     */
+    public Map<String, MappedZip.Entry> getSourceEntries() {
+        return sourceEntries;
+    }
+
+    /**
+     * Reads and decodes a single source file.
+     *
+     * @param relativePath The path of the source, relative to <code>qilletni-src</code>
+     * @return The contents of the source, or empty if no such source exists
+     */
+    public Optional<String> readSource(String relativePath) throws IOException {
+        var entry = sourceEntries.get(relativePath);
+
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new String(mappedQll.readEntry(entry), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return If the library contains a <code>native.jar</code>
+     */
+    public boolean hasNativeJar() {
+        return nativeJarEntry != null;
+    }
+
+    /**
+     * Opens the <code>native.jar</code> of the library for reading.
+     *
+     * @return The stream of the jar, or empty if the library has no native jar
+     */
+    public Optional<InputStream> openNativeJar() throws IOException {
+        if (nativeJarEntry == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(mappedQll.openEntry(nativeJarEntry));
+    }
+
+    /**
+     * Writes the <code>native.jar</code> of the library to the given file.
+     *
+     * @param destinationFile The file to write the jar to
+     * @return If the library has a native jar, and it was written
+     */
+    public boolean extractNativeJar(Path destinationFile) throws IOException {
+        if (nativeJarEntry == null) {
+            return false;
+        }
+
+        try (var is = mappedQll.openEntry(nativeJarEntry)) {
+            Files.copy(is, destinationFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return true;
+    }
+
+    /**
+     * Maps the <code>native.jar</code> of the library so its classes can be read in place, without extracting it. This
+     * is only possible if the jar is stored uncompressed in the .qll, which is the case for libraries built by this
+     * version of the toolchain.
+     *
+     * @return The mapped jar, or empty if the library has no native jar or it is compressed
+     */
+    public Optional<MappedZip> mapNativeJar() throws IOException {
+        if (nativeJarEntry == null || nativeJarEntry.method() != ZipEntry.STORED) {
+            return Optional.empty();
+        }
+
+        return Optional.of(mappedQll.openNested(nativeJarEntry, qllPath.getFileName() + "/" + NATIVE_JAR_ENTRY));
+    }
+
+    /**
+     * Nothing is held open once the archive is mapped, as the mapping is released when it is no longer reachable. This
+     * is kept so callers don't depend on how the archive is read.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+}
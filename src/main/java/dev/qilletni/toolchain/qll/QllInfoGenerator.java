@@ -20,6 +20,14 @@ public class QllInfoGenerator {
         Files.writeString(destinationDir.resolve("qll.info"), json);
     }
     
+    public String toJson(QllInfo qllInfo) {
+        return gson.toJson(qllInfo);
+    }
+
+    public QllInfo fromJson(String json) {
+        return gson.fromJson(json, QllInfo.class);
+    }
+    
     public QllInfo readQllInfo(InputStream qllInfoPath) {
         return gson.fromJson(new InputStreamReader(qllInfoPath), QllInfo.class);
     }
@@ -0,0 +1,178 @@
+package dev.qilletni.toolchain.qll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A persistent cache of the <code>native.jar</code> files extracted from .qll libraries. Entries are keyed by the .qll
+ * file name, size and last modified time, so an unchanged library is only ever extracted once across runs.
+ */
+public class QllJarCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QllJarCache.class);
+
+    /**
+     * Entries that have not been used in this amount of time are removed by {@link #evictStaleEntries()}.
+     */
+    private static final Duration MAX_UNUSED_AGE = Duration.ofDays(30);
+
+    /**
+     * Separates the .qll name from the size/mtime part of a cache key.
+     */
+    private static final String KEY_SEPARATOR = "@";
+
+    private static final String JAR_EXTENSION = ".jar";
+
+    /**
+     * The extension of the empty marker file written for libraries with no native jar, so their .qll doesn't need to be
+     * opened again.
+     */
+    private static final String NO_JAR_EXTENSION = ".none";
+
+    private final Path cacheDirectory;
+
+    public QllJarCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Gets the extracted native jar of the given .qll, extracting it into the cache if it's not present or the .qll has
+     * changed since it was last extracted.
+     *
+     * @param qllArchive The opened .qll library
+     * @return The path of the cached jar, or empty if the library has no native jar
+     */
+    public Optional<Path> getNativeJar(QllArchive qllArchive) throws IOException {
+        var qllPath = qllArchive.getPath();
+        var qllName = stripExtension(qllPath.getFileName().toString());
+        var key = createKey(qllName, qllPath);
+
+        var cachedJar = cacheDirectory.resolve(key + JAR_EXTENSION);
+        var noJarMarker = cacheDirectory.resolve(key + NO_JAR_EXTENSION);
+
+        if (Files.exists(cachedJar)) {
+            LOGGER.debug("Using cached native jar {} for {}", cachedJar.getFileName(), qllPath.getFileName());
+            markUsed(cachedJar);
+            return Optional.of(cachedJar);
+        }
+
+        if (Files.exists(noJarMarker)) {
+            markUsed(noJarMarker);
+            return Optional.empty();
+        }
+
+        removeEntriesFor(qllName);
+
+        // Not all libraries have native methods
+        if (!qllArchive.hasNativeJar()) {
+            try {
+                Files.createFile(noJarMarker);
+            } catch (FileAlreadyExistsException ignored) {}
+
+            return Optional.empty();
+        }
+
+        LOGGER.debug("Extracting native jar of {} into the cache", qllPath.getFileName());
+
+        // Extract to a temporary file first so concurrent runs never see a partially written jar
+        var tempJar = Files.createTempFile(cacheDirectory, "." + key, ".tmp");
+
+        try {
+            qllArchive.extractNativeJar(tempJar);
+            moveIntoPlace(tempJar, cachedJar);
+        } finally {
+            Files.deleteIfExists(tempJar);
+        }
+
+        return Optional.of(cachedJar);
+    }
+
+    /**
+     * Removes cache entries that haven't been used in {@link #MAX_UNUSED_AGE}, along with any leftover temporary files.
+     */
+    public void evictStaleEntries() {
+        var cutoff = Instant.now().minus(MAX_UNUSED_AGE);
+
+        try (var entries = Files.list(cacheDirectory)) {
+            entries.filter(Files::isRegularFile).forEach(entry -> {
+                try {
+                    if (Files.getLastModifiedTime(entry).toInstant().isBefore(cutoff)) {
+                        LOGGER.debug("Evicting unused cache entry {}", entry.getFileName());
+                        Files.deleteIfExists(entry);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to evict cache entry {}", entry, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Unable to evict stale entries from {}", cacheDirectory, e);
+        }
+    }
+
+    /**
+     * Removes all entries of a given .qll name, as they are from an older copy of the library.
+     *
+     * @param qllName The .qll file name, without the extension
+     */
+    private void removeEntriesFor(String qllName) {
+        var prefix = qllName + KEY_SEPARATOR;
+
+        try (var entries = Files.list(cacheDirectory)) {
+            entries.filter(entry -> entry.getFileName().toString().startsWith(prefix)).forEach(entry -> {
+                try {
+                    LOGGER.debug("Removing outdated cache entry {}", entry.getFileName());
+                    Files.deleteIfExists(entry);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to remove outdated cache entry {}", entry, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Unable to remove outdated entries of {}", qllName, e);
+        }
+    }
+
+    private void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Updates the last modified time of an entry, which is used to find entries that are no longer used.
+     */
+    private void markUsed(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            LOGGER.debug("Unable to update last used time of {}", entry, e);
+        }
+    }
+
+    private String createKey(String qllName, Path qllPath) throws IOException {
+        var size = Files.size(qllPath);
+        var lastModified = Files.getLastModifiedTime(qllPath).toMillis();
+
+        return "%s%s%x-%x".formatted(qllName, KEY_SEPARATOR, size, lastModified);
+    }
+
+    private String stripExtension(String qllName) {
+        if (!qllName.endsWith(".qll")) {
+            return qllName;
+        }
+
+        return qllName.substring(0, qllName.length() - 4);
+    }
+}
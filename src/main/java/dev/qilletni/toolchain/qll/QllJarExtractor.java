@@ -3,17 +3,15 @@ package dev.qilletni.toolchain.qll;
 import dev.qilletni.api.lib.qll.QllInfo;
 
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class QllJarExtractor {
     
-    private final List<URL> extractedJars = new ArrayList<>();
+    private final List<MappedZip> nativeJars = new ArrayList<>();
 
     /**
      * Takes a .qll and extracts the jar, preparing it for class loading. The jar file will be named the .qll name,\
@@ -23,24 +21,67 @@ public class QllJarExtractor {
      * @param destinationPath The directory to place the .jar file in
      */
     public void extractJarTo(Path qllPath, Path destinationPath) {
-        var destinationFile = destinationPath.resolve(createJarName(qllPath.getFileName().toString()));
-        
-        try (var fileSystem = FileSystems.newFileSystem(qllPath)) {
-            var path = fileSystem.getPath("native.jar");
-            
-            // Not all libraries have native methods
-            if (Files.notExists(path)) {
-                return;
-            }
-            
-            Files.copy(path, destinationFile);
+        extractJar(qllPath, destinationPath).ifPresent(this::addJar);
+    }
 
-            extractedJars.add(destinationFile.toUri().toURL());
+    /**
+     * Extracts the jar of a .qll without adding it to the jars to be class loaded. This is safe to call concurrently
+     * for different libraries.
+     *
+     * @param qllPath The path of the .qll library
+     * @param destinationPath The directory to place the .jar file in
+     * @return The extracted jar, or empty if the library has no native jar
+     */
+    public Optional<Path> extractJar(Path qllPath, Path destinationPath) {
+        try (var qllArchive = QllArchive.open(qllPath)) {
+            return extractJar(qllArchive, destinationPath);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Extracts the jar of an already opened .qll without adding it to the jars to be class loaded.
+     *
+     * @param qllArchive The opened .qll library
+     * @param destinationPath The directory to place the .jar file in
+     * @return The extracted jar, or empty if the library has no native jar
+     */
+    public Optional<Path> extractJar(QllArchive qllArchive, Path destinationPath) throws IOException {
+        var destinationFile = destinationPath.resolve(createJarName(qllArchive.getPath().getFileName().toString()));
+
+        // Not all libraries have native methods
+        if (!qllArchive.extractNativeJar(destinationFile)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(destinationFile);
+    }
+
+    /**
+     * Adds an already extracted jar to the jars to be class loaded. Jars are searched for classes in the order they
+     * are added.
+     *
+     * @param jarPath The path of the jar
+     */
+    public void addJar(Path jarPath) {
+        try {
+            nativeJars.add(MappedZip.open(jarPath));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds a mapped jar, such as one read in place from a .qll, to the jars to be class loaded. Jars are searched for
+     * classes in the order they are added.
+     *
+     * @param nativeJar The mapped jar
+     */
+    public void addJar(MappedZip nativeJar) {
+        nativeJars.add(nativeJar);
+    }
+
     /**
      * Copies a local library jar to a given path.
      *
@@ -54,11 +95,11 @@ public class QllJarExtractor {
 
         Files.copy(localJarPath, destinationJar);
 
-        extractedJars.add(localJarPath.toUri().toURL());
+        addJar(localJarPath);
     }
     
-    public URLClassLoader createClassLoader() {
-        return new URLClassLoader(extractedJars.toArray(URL[]::new));
+    public ClassLoader createClassLoader() {
+        return new QllNativeClassLoader(nativeJars, ClassLoader.getSystemClassLoader());
     }
     
     private String createJarName(String qllName) {
@@ -7,98 +7,55 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.function.Predicate;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 public class QllLoader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QllLoader.class);
 
-    public QllInfo loadQll(LibrarySourceFileResolver librarySourceFileResolver, Path qllPath) throws IOException, URISyntaxException {
-        LOGGER.debug("Loading {}", qllPath);
-
-        QllInfo qllInfo;
-
-        var zipUri = URI.create("jar:" + qllPath.toUri());
-        var qllInfoGenerator = new QllInfoGenerator();
-
-        try (var zipFile = new ZipFile(qllPath.toFile());
-             var zipFs = FileSystems.newFileSystem(zipUri, Collections.emptyMap())) {
-            qllInfo = qllInfoGenerator.readQllInfo(zipFile.getInputStream(zipFile.getEntry("qll.info")));
-
-            LOGGER.debug("qllInfo = {}", qllInfo);
-
-//            qllJarClassLoader.loadJar(zipFile.getInputStream(zipFile.getEntry("native.jar")));
-
-            var srcPathInZip = zipFs.getPath("qilletni-src");
-
-            var sourceMap = new HashMap<String, String>();
-
-            zipFile.stream().filter(Predicate.not(ZipEntry::isDirectory))
-                    .forEach(entry -> {
-                        String normalizedName = entry.getName().replace("\\", "/");
-
-                        // Get a Path object *within the Zip FileSystem*
-                        // This Path object will correctly use '/' separators internally
-                        Path entryPathInZip = zipFs.getPath(normalizedName);
-
-                        Path fileName = entryPathInZip.getFileName();
-                        Path parentDir = entryPathInZip.getParent(); // null for entries in root
-
-                        // Determine the "root" component (first directory name)
-                        var root = "";
-                        if (entryPathInZip.getNameCount() > 1) {
-                            // Get the first path element (e.g., "src" from "src/core.ql")
-                            root = entryPathInZip.getName(0).toString();
-                        }
-
-                        // Handle cases where the entry might not be under "src"
-                        var relative = "N/A";
+    /**
+     * Reads the {@link QllInfo} of a .qll and registers its sources. Sources are read lazily from the archive, so it
+     * must be kept open for as long as the {@link LibrarySourceFileResolver} is in use.
+     *
+     * @param librarySourceFileResolver The {@link LibrarySourceFileResolver} to register the library with
+     * @param qllArchive                The opened .qll library
+     * @return The read {@link QllInfo}
+     */
+    public QllInfo loadQll(LibrarySourceFileResolver librarySourceFileResolver, QllArchive qllArchive) throws IOException {
+        var loadedQll = readQll(qllArchive);
+        loadedQll.registerWith(librarySourceFileResolver);
+        return loadedQll.qllInfo();
+    }
 
-                        try {
-                            if (parentDir != null && parentDir.startsWith(srcPathInZip)) {
-                                relative = srcPathInZip.relativize(entryPathInZip).toString();
-                            } else if (entryPathInZip.startsWith(srcPathInZip) && entryPathInZip.getNameCount() == 1) {
-                                // Handle files directly inside src, like "src/somefile.ql"
-                                relative = entryPathInZip.getFileName().toString(); // Or srcPathInZip.relativize(entryPathInZip)
-                            } else if (entryPathInZip.startsWith(srcPathInZip)) {
-                                relative = srcPathInZip.relativize(entryPathInZip).toString();
-                            }
+    /**
+     * Reads the {@link QllInfo} of a .qll without registering it anywhere. No sources are read until they are imported.
+     * This does not touch any shared state, so multiple libraries may be read concurrently.
+     *
+     * @param qllArchive The opened .qll library, which must stay open while the library is in use
+     * @return The read library, which may be registered with {@link LoadedQll#registerWith(LibrarySourceFileResolver)}
+     */
+    public LoadedQll readQll(QllArchive qllArchive) throws IOException {
+        LOGGER.debug("Loading {}", qllArchive.getPath());
 
-                            // If it's not under src, keep relative="N/A" or handle differently
-                        } catch (IllegalArgumentException e) {
-                            LOGGER.warn("Cannot relativize {} against {}", entryPathInZip, srcPathInZip);
-                        }
+        var qllInfo = qllArchive.readQllInfo();
 
-                        // Logging using Path components
-                        LOGGER.debug("Entry: {} (Path: {}) is of: {}, {} ({})",
-                                entry.getName(),
-                                entryPathInZip,
-                                fileName,
-                                root,
-                                relative);
+        LOGGER.debug("qllInfo = {}", qllInfo);
 
-                        if (fileName.toString().endsWith(".ql") && root.equals("qilletni-src")) {
-                            try (var is = zipFile.getInputStream(entry)) {
-                                sourceMap.put(relative.replace("\\", "/"), new String(is.readAllBytes()));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    });
+        return new LoadedQll(qllInfo, new QllSourceResolver(qllArchive));
+    }
 
-            librarySourceFileResolver.addLibraryResolver(qllInfo.name(), sourceMap::get);
-        }
+    /**
+     * Creates a {@link LoadedQll} for a library whose {@link QllInfo} is already known, such as from the
+     * {@link QllPackageIndex}, without reading its <code>qll.info</code> again.
+     *
+     * @param qllArchive The opened .qll library, which must stay open while the library is in use
+     * @param qllInfo    The already read info of the library
+     * @return The library, which may be registered with {@link LoadedQll#registerWith(LibrarySourceFileResolver)}
+     */
+    public LoadedQll readQll(QllArchive qllArchive, QllInfo qllInfo) {
+        LOGGER.debug("Loading {} with known info", qllArchive.getPath());
 
-        return qllInfo;
+        return new LoadedQll(qllInfo, new QllSourceResolver(qllArchive));
     }
 
     /**
@@ -110,43 +67,50 @@ public class QllLoader {
      * @return The created {@link QllInfo}
      */
     public QllInfo loadLocalLibrary(LibrarySourceFileResolver librarySourceFileResolver, Path projectRootPath) throws IOException {
+        var localLibrary = readLocalLibrary(projectRootPath);
+        localLibrary.registerWith(librarySourceFileResolver);
+        return localLibrary.qllInfo();
+    }
+
+    /**
+     * Reads a local library without registering it anywhere. The returned library's {@link LocalSourceResolver} may be
+     * used to pick up changes to its sources.
+     *
+     * @param projectRootPath The root path of the project (i.e. the parent of the <code>qilletni-src</code>)
+     * @return The read library, which may be registered with
+     *         {@link LocalLibrary#registerWith(LibrarySourceFileResolver)}
+     */
+    public LocalLibrary readLocalLibrary(Path projectRootPath) throws IOException {
         LOGGER.debug("Loading local {}", projectRootPath);
 
         var srcPath = projectRootPath.resolve("qilletni-src");
 
         var qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(srcPath));
 
-        // key: Qilletni file path,  value = actual file path
-        var sourceMap = new HashMap<String, Path>();
-        var sourceCache = new HashMap<String, String>();
-
-        try (var walk = Files.walk(srcPath)) {
-            walk.filter(Predicate.not(Files::isDirectory))
-                    .filter(path -> path.getFileName().toString().endsWith(".ql"))
-                    .forEach(entry -> {
-                        String relative = srcPath.relativize(entry).toString().replace("\\", "/");
+        return new LocalLibrary(qllInfo, new LocalSourceResolver(srcPath));
+    }
 
-                        LOGGER.debug("Entry: {} is of: {}, {}", entry, entry.getFileName(), relative);
-                        sourceMap.put(relative, entry);
-                    });
+    /**
+     * A .qll library that has been read, but not yet registered with a {@link LibrarySourceFileResolver}.
+     *
+     * @param qllInfo The info of the library
+     * @param sourceResolver The resolver reading the library's sources on demand
+     */
+    public record LoadedQll(QllInfo qllInfo, QllSourceResolver sourceResolver) {
+        public void registerWith(LibrarySourceFileResolver librarySourceFileResolver) {
+            librarySourceFileResolver.addLibraryResolver(qllInfo.name(), sourceResolver::resolveSource);
         }
+    }
 
-        librarySourceFileResolver.addLibraryResolver(qllInfo.name(), importPath ->
-                sourceCache.computeIfAbsent(importPath, path -> {
-                    var actualPath = sourceMap.get(path);
-
-                    if (actualPath == null) {
-                        return null;
-                    }
-
-                    try {
-                        return Files.readString(actualPath);
-                    } catch (IOException e) {
-                        LOGGER.error("Failed to read local library file: {}", actualPath, e);
-                        return null;
-                    }
-                }));
-
-        return qllInfo;
+    /**
+     * A local library that has been read, but not yet registered with a {@link LibrarySourceFileResolver}.
+     *
+     * @param qllInfo The info of the library
+     * @param sourceResolver The resolver reading the library's sources from disk
+     */
+    public record LocalLibrary(QllInfo qllInfo, LocalSourceResolver sourceResolver) {
+        public void registerWith(LibrarySourceFileResolver librarySourceFileResolver) {
+            librarySourceFileResolver.addLibraryResolver(qllInfo.name(), sourceResolver::resolveSource);
+        }
     }
 }
@@ -0,0 +1,134 @@
+package dev.qilletni.toolchain.qll;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A lockfile recording the exact libraries a program was run with. When a program is run with a lockfile, the
+ * dependency directory isn't scanned and dependencies aren't resolved or validated again; the locked archives are
+ * loaded directly, after checking their hashes.
+ * <br><br>
+ * The lockfile also records a fingerprint of everything the libraries were resolved from (the declared dependencies,
+ * the local library and how dependencies were picked), so a lockfile that no longer matches them isn't used.
+ *
+ * @param formatVersion         The version of the lockfile format
+ * @param resolutionFingerprint The fingerprint of the inputs the libraries were resolved from
+ * @param libraries             The locked libraries, in the order they are loaded
+ */
+public record QllLockfile(int formatVersion, String resolutionFingerprint, List<LockedLibrary> libraries) {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QllLockfile.class);
+
+    /**
+     * The name of the lockfile, which is placed next to the program it locks.
+     */
+    public static final String LOCKFILE_NAME = "qilletni.lock";
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public QllLockfile(String resolutionFingerprint, List<LockedLibrary> libraries) {
+        this(FORMAT_VERSION, resolutionFingerprint, libraries);
+    }
+
+    /**
+     * Creates a fingerprint of the inputs libraries are resolved from.
+     *
+     * @param onlyDependencies     If only the declared dependencies are loaded, instead of every installed library
+     * @param localLibrary         The local library being loaded, or <code>null</code> if there is none
+     * @param declaredDependencies The dependencies declared by the program, if it has a <code>qilletni_info</code>
+     * @return The hex fingerprint
+     */
+    public static String computeResolutionFingerprint(boolean onlyDependencies, QllInfo localLibrary, Optional<List<QilletniInfoData.Dependency>> declaredDependencies) {
+        var inputs = new StringBuilder()
+                .append("only-dependencies:").append(onlyDependencies).append('\n')
+                .append("local:");
+
+        if (localLibrary != null) {
+            inputs.append(localLibrary.name()).append('@').append(localLibrary.version().getVersionString());
+        }
+
+        inputs.append('\n').append("dependencies:").append(declaredDependencies.map(gson::toJson).orElse("none"));
+
+        return FileUtil.hashString(inputs.toString());
+    }
+
+    /**
+     * Checks if the libraries in this lockfile were resolved from the same inputs.
+     *
+     * @param resolutionFingerprint The fingerprint of the current inputs
+     * @return If this lockfile may be used
+     */
+    public boolean matchesResolution(String resolutionFingerprint) {
+        return resolutionFingerprint.equals(this.resolutionFingerprint);
+    }
+
+    /**
+     * Gets the path of the lockfile for a given program.
+     *
+     * @param programFile The .ql file being run
+     * @return The path of the lockfile next to it
+     */
+    public static Path getLockfilePath(Path programFile) {
+        return programFile.toAbsolutePath().resolveSibling(LOCKFILE_NAME);
+    }
+
+    /**
+     * Reads a lockfile.
+     *
+     * @param lockfilePath The path of the lockfile
+     * @return The read lockfile, or empty if it doesn't exist or is of an unknown format
+     */
+    public static Optional<QllLockfile> read(Path lockfilePath) throws IOException {
+        if (Files.notExists(lockfilePath)) {
+            return Optional.empty();
+        }
+
+        try {
+            var lockfile = gson.fromJson(Files.readString(lockfilePath), QllLockfile.class);
+
+            if (lockfile == null || lockfile.formatVersion() != FORMAT_VERSION || lockfile.libraries() == null) {
+                LOGGER.warn("Ignoring lockfile {} with an unknown format", lockfilePath);
+                return Optional.empty();
+            }
+
+            return Optional.of(lockfile);
+        } catch (JsonParseException e) {
+            LOGGER.warn("Ignoring unreadable lockfile {}", lockfilePath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes this lockfile.
+     *
+     * @param lockfilePath The path to write the lockfile to
+     */
+    public void write(Path lockfilePath) throws IOException {
+        Files.writeString(lockfilePath, gson.toJson(this));
+    }
+
+    /**
+     * A single locked library.
+     *
+     * @param name     The name of the library
+     * @param version  The version of the library
+     * @param fileName The file name of the .qll in the dependency directory
+     * @param hash     The hex SHA-256 hash of the .qll
+     * @param qllInfo  The library's info, so the archive's <code>qll.info</code> doesn't need to be read
+     */
+    public record LockedLibrary(String name, String version, String fileName, String hash, QllInfo qllInfo) {}
+}
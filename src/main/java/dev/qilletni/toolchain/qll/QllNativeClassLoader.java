@@ -0,0 +1,260 @@
+package dev.qilletni.toolchain.qll;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Loads classes and resources of native jars straight out of {@link MappedZip}s, so jars stored inside a .qll never
+ * have to be extracted to disk. Jars are searched in the order they are given, like a {@link java.net.URLClassLoader}.
+ * Resources are exposed through <code>qll-native:</code> URLs that read from the mapped jar.
+ * <br><br>
+ * Like a {@link java.util.jar.JarFile} opened for the running Java version, classes and resources of a Multi-Release
+ * jar are read from the newest <code>META-INF/versions/&lt;version&gt;</code> directory that has them. Packages are
+ * defined with the attributes in the jar's manifest.
+ */
+public class QllNativeClassLoader extends SecureClassLoader {
+
+    private static final String URL_SCHEME = "qll-native";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final List<NativeJar> nativeJars;
+
+    /**
+     * @param jars   The jars to load from, in the order they are searched
+     * @param parent The parent class loader
+     */
+    public QllNativeClassLoader(List<MappedZip> jars, ClassLoader parent) {
+        super(parent);
+        this.nativeJars = jars.stream().map(NativeJar::new).toList();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        var entryName = name.replace('.', '/') + ".class";
+
+        for (var nativeJar : nativeJars) {
+            var entry = nativeJar.findEntry(entryName);
+
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            try {
+                var classBytes = nativeJar.jar.readEntry(entry.get());
+
+                definePackageIfAbsent(name, nativeJar);
+                return defineClass(name, classBytes, 0, classBytes.length, nativeJar.codeSource);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        for (var nativeJar : nativeJars) {
+            var entry = nativeJar.findEntry(name);
+
+            if (entry.isPresent()) {
+                return nativeJar.createUrl(entry.get().name());
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        return Collections.enumeration(nativeJars.stream()
+                .flatMap(nativeJar -> nativeJar.findEntry(name).map(entry -> nativeJar.createUrl(entry.name())).stream())
+                .toList());
+    }
+
+    /**
+     * Defines the package of a class, with the attributes of the package's section in the jar's manifest, or else its
+     * main attributes, as a {@link java.net.URLClassLoader} does.
+     */
+    private void definePackageIfAbsent(String className, NativeJar nativeJar) {
+        var packageEnd = className.lastIndexOf('.');
+
+        if (packageEnd == -1) {
+            return;
+        }
+
+        var packageName = className.substring(0, packageEnd);
+
+        if (getDefinedPackage(packageName) != null) {
+            return;
+        }
+
+        var manifest = nativeJar.manifest;
+
+        try {
+            if (manifest == null) {
+                definePackage(packageName, null, null, null, null, null, null, null);
+                return;
+            }
+
+            var packagePath = packageName.replace('.', '/') + "/";
+            var sealed = "true".equalsIgnoreCase(getManifestAttribute(manifest, packagePath, Attributes.Name.SEALED));
+
+            definePackage(packageName,
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.SPECIFICATION_TITLE),
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.SPECIFICATION_VERSION),
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.SPECIFICATION_VENDOR),
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.IMPLEMENTATION_TITLE),
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.IMPLEMENTATION_VERSION),
+                    getManifestAttribute(manifest, packagePath, Attributes.Name.IMPLEMENTATION_VENDOR),
+                    sealed ? nativeJar.codeSource.getLocation() : null);
+        } catch (IllegalArgumentException ignored) {
+            // Another thread defined it first
+        }
+    }
+
+    private static String getManifestAttribute(Manifest manifest, String packagePath, Attributes.Name name) {
+        var packageAttributes = manifest.getAttributes(packagePath);
+
+        if (packageAttributes != null && packageAttributes.getValue(name) != null) {
+            return packageAttributes.getValue(name);
+        }
+
+        return manifest.getMainAttributes().getValue(name);
+    }
+
+    /**
+     * A jar being loaded from, with the handler serving its resource URLs.
+     */
+    private static class NativeJar extends URLStreamHandler {
+
+        private static final String MANIFEST_ENTRY = "META-INF/MANIFEST.MF";
+        private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+        /**
+         * The first Java version with Multi-Release jars.
+         */
+        private static final int MIN_RELEASE_VERSION = 9;
+
+        private final MappedZip jar;
+        private final CodeSource codeSource;
+
+        /**
+         * The jar's manifest, or <code>null</code> if it has none.
+         */
+        private final Manifest manifest;
+        private final boolean multiRelease;
+
+        NativeJar(MappedZip jar) {
+            this.jar = jar;
+            this.codeSource = new CodeSource(createUrl(""), (Certificate[]) null);
+            this.manifest = readManifest(jar);
+            this.multiRelease = manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+        }
+
+        private static Manifest readManifest(MappedZip jar) {
+            var manifestEntry = jar.getEntry(MANIFEST_ENTRY);
+
+            if (manifestEntry.isEmpty()) {
+                return null;
+            }
+
+            try (var is = jar.openEntry(manifestEntry.get())) {
+                return new Manifest(is);
+            } catch (IOException e) {
+                // The jar is still usable, only without its manifest's attributes
+                return null;
+            }
+        }
+
+        /**
+         * Finds an entry, preferring the newest version of it for the running Java version if this is a Multi-Release
+         * jar.
+         */
+        Optional<MappedZip.Entry> findEntry(String entryName) {
+            if (multiRelease && !entryName.startsWith("META-INF/")) {
+                for (int version = Runtime.version().feature(); version >= MIN_RELEASE_VERSION; version--) {
+                    var versionedEntry = jar.getEntry(VERSIONS_DIRECTORY + version + "/" + entryName);
+
+                    if (versionedEntry.isPresent()) {
+                        return versionedEntry;
+                    }
+                }
+            }
+
+            return jar.getEntry(entryName);
+        }
+
+        /**
+         * Creates a URL of the form <code>qll-native:/&lt;jar name&gt;!/&lt;entry name&gt;</code> that is read through
+         * this handler, which is bound to a single jar.
+         */
+        URL createUrl(String entryName) {
+            try {
+                return URL.of(new URI(URL_SCHEME, null, "/" + jar.getName() + "!/" + entryName, null), this);
+            } catch (URISyntaxException | MalformedURLException e) {
+                throw new IllegalArgumentException("Unable to create a URL for %s in %s".formatted(entryName, jar.getName()), e);
+            }
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            String path;
+
+            try {
+                path = url.toURI().getPath();
+            } catch (URISyntaxException e) {
+                throw new MalformedURLException(e.getMessage());
+            }
+
+            var entryName = path.substring(jar.getName().length() + 3);
+            var entry = jar.getEntry(entryName).orElseThrow(() -> new IOException("No entry %s in %s".formatted(entryName, jar.getName())));
+
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return jar.openEntry(entry);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    return entry.size();
+                }
+            };
+        }
+
+        @Override
+        protected boolean equals(URL first, URL second) {
+            return Objects.equals(first.toExternalForm(), second.toExternalForm());
+        }
+
+        @Override
+        protected int hashCode(URL url) {
+            return url.toExternalForm().hashCode();
+        }
+    }
+}
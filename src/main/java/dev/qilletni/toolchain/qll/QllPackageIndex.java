@@ -0,0 +1,266 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+/**
+ * A compact binary index of the .qll libraries in a dependency directory. It lets the installed libraries and their
+ * {@link QllInfo} be listed without opening every archive. Entries are revalidated against each file's size and last
+ * modified time, so only new or changed libraries are ever read again.
+ */
+public class QllPackageIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QllPackageIndex.class);
+
+    /**
+     * The name of the index file, which is stored in the dependency directory it indexes.
+     */
+    public static final String INDEX_FILE_NAME = ".qll-index";
+
+    private static final int MAGIC = 0x514C4C49; // QLLI
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path dependencyPath;
+
+    /**
+     * The indexed entries, keyed by their .qll file name.
+     */
+    private final Map<String, IndexEntry> entries;
+
+    private boolean dirty;
+
+    private QllPackageIndex(Path dependencyPath, Map<String, IndexEntry> entries) {
+        this.dependencyPath = dependencyPath;
+        this.entries = entries;
+    }
+
+    /**
+     * Loads the index of a dependency directory. If there is no index, or it can't be read, an empty index is returned
+     * that will be filled by {@link #refresh()}.
+     *
+     * @param dependencyPath The directory holding the .qll libraries
+     * @return The loaded index
+     */
+    public static QllPackageIndex load(Path dependencyPath) {
+        var indexFile = dependencyPath.resolve(INDEX_FILE_NAME);
+        var entries = new TreeMap<String, IndexEntry>();
+
+        if (Files.notExists(indexFile)) {
+            return new QllPackageIndex(dependencyPath, entries);
+        }
+
+        var qllInfoGenerator = new QllInfoGenerator();
+
+        try (var dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+                LOGGER.debug("Ignoring index {} with an unknown format", indexFile);
+                return new QllPackageIndex(dependencyPath, new TreeMap<>());
+            }
+
+            var count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                var fileName = dis.readUTF();
+                var size = dis.readLong();
+                var lastModified = dis.readLong();
+                var hash = dis.readUTF();
+
+                var qllInfoJson = new byte[dis.readInt()];
+                dis.readFully(qllInfoJson);
+
+                var qllInfo = qllInfoGenerator.fromJson(new String(qllInfoJson, StandardCharsets.UTF_8));
+                entries.put(fileName, new IndexEntry(fileName, size, lastModified, hash, qllInfo));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read package index {}, it will be rebuilt", indexFile, e);
+            return new QllPackageIndex(dependencyPath, new TreeMap<>());
+        }
+
+        return new QllPackageIndex(dependencyPath, entries);
+    }
+
+    /**
+     * Brings the index up to date with the dependency directory. Only libraries that were added or whose size or last
+     * modified time changed are opened, and entries for removed libraries are dropped.
+     *
+     * @return If anything in the index changed
+     */
+    public boolean refresh() throws IOException {
+        var changedFiles = new ArrayList<Path>();
+        var presentFiles = new HashSet<String>();
+
+        try (var files = Files.list(dependencyPath)) {
+            for (var path : files.filter(path -> path.getFileName().toString().endsWith(".qll")).toList()) {
+                var fileName = path.getFileName().toString();
+                presentFiles.add(fileName);
+
+                var entry = entries.get(fileName);
+                if (entry == null || !entry.matches(path)) {
+                    changedFiles.add(path);
+                }
+            }
+        }
+
+        var removed = entries.keySet().removeIf(fileName -> !presentFiles.contains(fileName));
+
+        if (removed) {
+            LOGGER.debug("Removed deleted libraries from the package index");
+        }
+
+        // Reading a .qll is mostly I/O, so new and changed libraries are indexed concurrently
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = changedFiles.stream()
+                    .map(path -> executor.submit(() -> createEntry(path)))
+                    .toList();
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    var entry = futures.get(i).get();
+                    entries.put(entry.fileName(), entry);
+                } catch (ExecutionException e) {
+                    var path = changedFiles.get(i);
+                    LOGGER.error("Unable to index {}, it will not be loaded", path, e.getCause());
+                    entries.remove(path.getFileName().toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing libraries", e);
+        }
+
+        if (removed || !changedFiles.isEmpty()) {
+            dirty = true;
+        }
+
+        return dirty;
+    }
+
+    /**
+     * Adds or replaces the entry of a single .qll in the index.
+     *
+     * @param qllPath The path of the library, which must be in the indexed dependency directory
+     */
+    public void update(Path qllPath) throws IOException {
+        var entry = createEntry(qllPath);
+        entries.put(entry.fileName(), entry);
+        dirty = true;
+    }
+
+    /**
+     * Writes the index to the dependency directory, if it has changed since it was loaded.
+     */
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        var indexFile = dependencyPath.resolve(INDEX_FILE_NAME);
+        var tempFile = Files.createTempFile(dependencyPath, INDEX_FILE_NAME, ".tmp");
+        var qllInfoGenerator = new QllInfoGenerator();
+
+        try {
+            try (var dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(entries.size());
+
+                for (var entry : entries.values()) {
+                    dos.writeUTF(entry.fileName());
+                    dos.writeLong(entry.size());
+                    dos.writeLong(entry.lastModified());
+                    dos.writeUTF(entry.hash());
+
+                    var qllInfoJson = qllInfoGenerator.toJson(entry.qllInfo()).getBytes(StandardCharsets.UTF_8);
+                    dos.writeInt(qllInfoJson.length);
+                    dos.write(qllInfoJson);
+                }
+            }
+
+            // Replaced atomically so concurrent readers never see a partially written index
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * @return All indexed libraries, sorted by their file name
+     */
+    public List<IndexEntry> getEntries() {
+        return List.copyOf(entries.values());
+    }
+
+    /**
+     * @return The directory holding the indexed libraries
+     */
+    public Path getDependencyPath() {
+        return dependencyPath;
+    }
+
+    private IndexEntry createEntry(Path qllPath) throws IOException {
+        LOGGER.debug("Indexing {}", qllPath);
+
+        var size = Files.size(qllPath);
+        var lastModified = Files.getLastModifiedTime(qllPath).toMillis();
+        var hash = FileUtil.hashFile(qllPath);
+
+        try (var qllArchive = QllArchive.open(qllPath)) {
+            return new IndexEntry(qllPath.getFileName().toString(), size, lastModified, hash, qllArchive.readQllInfo());
+        }
+    }
+
+    /**
+     * A single indexed library.
+     *
+     * @param fileName     The file name of the .qll in the dependency directory
+     * @param size         The size of the .qll when it was indexed
+     * @param lastModified The last modified time of the .qll in milliseconds when it was indexed
+     * @param hash         The hex SHA-256 hash of the .qll
+     * @param qllInfo      The library's info
+     */
+    public record IndexEntry(String fileName, long size, long lastModified, String hash, QllInfo qllInfo) {
+
+        /**
+         * Checks if the given file is still the same as when it was indexed.
+         *
+         * @param qllPath The current path of the library
+         * @return If the size and last modified time are unchanged
+         */
+        public boolean matches(Path qllPath) {
+            try {
+                return Files.size(qllPath) == size && Files.getLastModifiedTime(qllPath).toMillis() == lastModified;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                LOGGER.debug("Unable to check {}", qllPath, e);
+                return false;
+            }
+        }
+    }
+}
@@ -1,32 +1,168 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.api.lib.qll.QllInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class QllPackager {
 
-    public void packageQll(Path qllDirectoryPath, Path qllDestination) throws IOException {
-        try (
-                var fos = Files.newOutputStream(qllDestination);
-                var zos = new ZipOutputStream(fos);
-                var walking = Files.walk(qllDirectoryPath)) {
-            
-            walking.filter(path -> !Files.isDirectory(path))
-                    .forEach(path -> {
-                        var zipEntry = new ZipEntry(qllDirectoryPath.relativize(path).toString());
-
-                        try {
-                            zos.putNextEntry(zipEntry);
-                            Files.copy(path, zos);
-                            zos.closeEntry();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    });
+    /**
+     * The timestamp given to every entry, so packaging the same inputs always produces the same bytes. This is the
+     * earliest time a zip's DOS timestamp can represent, plus a month to avoid time zone edge cases.
+     */
+    static final LocalDateTime ENTRY_TIME = LocalDateTime.of(1980, 2, 1, 0, 0);
+
+    static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final int compressionLevel;
+    private final boolean parallel;
+
+    /**
+     * Creates a packager using the default compression level, that compresses entries one at a time.
+     */
+    public QllPackager() {
+        this(Deflater.DEFAULT_COMPRESSION, false);
+    }
+
+    /**
+     * @param compressionLevel The deflate level from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param parallel         If entries should be compressed concurrently across all cores
+     */
+    public QllPackager(int compressionLevel, boolean parallel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+
+        this.compressionLevel = compressionLevel;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Packages a library straight from its sources, without copying anything into a staging directory first. Entries
+     * are written in sorted order with a fixed timestamp, so the same inputs always produce the same .qll.
+     *
+     * @param qllInfo        The info of the library, written as <code>qll.info</code>
+     * @param sourcePath     The <code>qilletni-src</code> directory, whose <code>.ql</code> files are packaged
+     * @param nativeJar      The native jar to package as <code>native.jar</code>, if any
+     * @param qllDestination The .qll file to write
+     */
+    public void packageQll(QllInfo qllInfo, Path sourcePath, Optional<Path> nativeJar, Path qllDestination) throws IOException {
+        var entries = new ArrayList<PackageEntry>();
+
+        // A jar is already compressed, so it is stored. This also lets it be class loaded in place at runtime.
+        nativeJar.ifPresent(jar -> entries.add(PackageEntry.ofFile("native.jar", jar, true)));
+
+        new QilletniSourceHandler().findQilletniSources(sourcePath)
+                .forEach((relativePath, path) -> entries.add(PackageEntry.ofFile("qilletni-src/" + relativePath, path, false)));
+
+        var qllInfoBytes = new QllInfoGenerator().toJson(qllInfo).getBytes(StandardCharsets.UTF_8);
+        entries.add(new PackageEntry("qll.info", null, qllInfoBytes, false));
+
+        writeEntries(entries, qllDestination);
+    }
+
+    private void writeEntries(List<PackageEntry> entries, Path qllDestination) throws IOException {
+        var sortedEntries = entries.stream().sorted(Comparator.comparing(PackageEntry::name)).toList();
+
+        if (parallel) {
+            new ParallelZipWriter(compressionLevel).write(sortedEntries, qllDestination);
+            return;
+        }
+
+        // The deflater writes in small chunks, which would otherwise each be a write to the file
+        try (var zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(qllDestination), OUTPUT_BUFFER_SIZE))) {
+            zos.setLevel(compressionLevel);
+
+            for (var entry : sortedEntries) {
+                if (entry.stored()) {
+                    putStoredEntry(zos, entry);
+                } else {
+                    zos.putNextEntry(createEntry(entry.name()));
+                    entry.writeTo(zos);
+                    zos.closeEntry();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an entry uncompressed. The size and CRC of stored entries must be known before they are written.
+     */
+    private void putStoredEntry(ZipOutputStream zos, PackageEntry entry) throws IOException {
+        var crc = new CRC32();
+
+        try (var is = new CheckedInputStream(entry.openStream(), crc)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+
+        var size = entry.size();
+
+        var zipEntry = createEntry(entry.name());
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(size);
+        zipEntry.setCompressedSize(size);
+        zipEntry.setCrc(crc.getValue());
+
+        zos.putNextEntry(zipEntry);
+        entry.writeTo(zos);
+        zos.closeEntry();
+    }
+
+    private ZipEntry createEntry(String name) {
+        var zipEntry = new ZipEntry(name);
+        zipEntry.setTimeLocal(ENTRY_TIME);
+        return zipEntry;
+    }
+
+    /**
+     * A single entry to be packaged, backed by either a file or bytes in memory.
+     *
+     * @param name   The name of the entry in the .qll
+     * @param file   The file holding the contents, or <code>null</code> if <code>data</code> is used
+     * @param data   The contents, or <code>null</code> if <code>file</code> is used
+     * @param stored If the entry is written uncompressed
+     */
+    record PackageEntry(String name, Path file, byte[] data, boolean stored) {
+
+        static PackageEntry ofFile(String name, Path file, boolean stored) {
+            return new PackageEntry(name, file, null, stored);
+        }
+
+        long size() throws IOException {
+            return data != null ? data.length : Files.size(file);
+        }
+
+        byte[] readAllBytes() throws IOException {
+            return data != null ? data : Files.readAllBytes(file);
+        }
+
+        InputStream openStream() throws IOException {
+            return data != null ? new ByteArrayInputStream(data) : Files.newInputStream(file);
+        }
+
+        void writeTo(OutputStream outputStream) throws IOException {
+            if (data != null) {
+                outputStream.write(data);
+            } else {
+                Files.copy(file, outputStream);
+            }
         }
     }
 }
@@ -0,0 +1,56 @@
+package dev.qilletni.toolchain.qll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the sources of a packaged library on demand. Sources are only read and decoded from the
+ * {@link QllArchive} the first time they are imported, and are cached after that. The archive must stay open for as
+ * long as this resolver is in use.
+ */
+public class QllSourceResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QllSourceResolver.class);
+
+    private final QllArchive qllArchive;
+
+    /**
+     * Decoded sources, keyed by their path relative to <code>qilletni-src</code>.
+     */
+    private final Map<String, String> sourceCache = new ConcurrentHashMap<>();
+
+    public QllSourceResolver(QllArchive qllArchive) {
+        this.qllArchive = qllArchive;
+    }
+
+    /**
+     * Gets the contents of a source file in the library.
+     *
+     * @param importPath The path of the source, relative to <code>qilletni-src</code>
+     * @return The contents of the file, or <code>null</code> if it doesn't exist or couldn't be read
+     */
+    public String resolveSource(String importPath) {
+        if (!qllArchive.getSourceEntries().containsKey(importPath)) {
+            return null;
+        }
+
+        try {
+            return sourceCache.computeIfAbsent(importPath, path -> {
+                try {
+                    LOGGER.debug("Reading {} from {}", path, qllArchive.getPath().getFileName());
+                    return qllArchive.readSource(path).orElse(null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            LOGGER.error("Failed to read library file {} from {}", importPath, qllArchive.getPath(), e);
+            return null;
+        }
+    }
+}
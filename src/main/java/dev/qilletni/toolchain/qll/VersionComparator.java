@@ -0,0 +1,57 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.Version;
+
+import java.util.Comparator;
+
+/**
+ * Orders {@link Version}s by their numeric components, so <code>1.10.0</code> is newer than <code>1.9.0</code>.
+ * Non-numeric components (such as a <code>-SNAPSHOT</code> suffix) are compared as strings, and a version with such a
+ * suffix is older than the same version without one.
+ */
+public class VersionComparator implements Comparator<Version> {
+
+    public static final VersionComparator INSTANCE = new VersionComparator();
+
+    @Override
+    public int compare(Version first, Version second) {
+        var firstParts = first.getVersionString().split("[.-]");
+        var secondParts = second.getVersionString().split("[.-]");
+
+        for (int i = 0; i < Math.min(firstParts.length, secondParts.length); i++) {
+            var result = compareComponent(firstParts[i], secondParts[i]);
+
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        if (firstParts.length == secondParts.length) {
+            return 0;
+        }
+
+        // Extra numeric components make a version newer (1.0.1 > 1.0), while a suffix makes it older (1.0-rc < 1.0)
+        var longer = firstParts.length > secondParts.length ? firstParts : secondParts;
+        var extraIsNumeric = isNumeric(longer[Math.min(firstParts.length, secondParts.length)]);
+        var firstIsLonger = firstParts.length > secondParts.length;
+
+        return firstIsLonger == extraIsNumeric ? 1 : -1;
+    }
+
+    private int compareComponent(String first, String second) {
+        if (isNumeric(first) && isNumeric(second)) {
+            return Long.compare(Long.parseLong(first), Long.parseLong(second));
+        }
+
+        if (isNumeric(first) != isNumeric(second)) {
+            // A release component is newer than a suffix in the same position
+            return isNumeric(first) ? 1 : -1;
+        }
+
+        return first.compareTo(second);
+    }
+
+    private boolean isNumeric(String component) {
+        return !component.isEmpty() && component.length() < 19 && component.chars().allMatch(Character::isDigit);
+    }
+}
@@ -0,0 +1,182 @@
+package dev.qilletni.toolchain.run;
+
+import dev.qilletni.toolchain.qll.MappedZip;
+import dev.qilletni.toolchain.qll.QllArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Keeps opened libraries and their native class loaders between runs in the same process, which is only enabled by
+ * the daemon. A library is opened again if its .qll changed since it was cached, and a class loader is only reused by
+ * runs loading exactly the same, unchanged, native jars.
+ */
+public class LoadedLibraryCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadedLibraryCache.class);
+
+    /**
+     * The number of class loaders kept. Each distinct set of native jars gets its own loader, so a daemon serving many
+     * projects would otherwise keep every loader it ever created.
+     */
+    private static final int MAX_CLASS_LOADERS = 8;
+
+    private static volatile LoadedLibraryCache sharedCache;
+
+    private final Map<Path, CachedLibrary> libraries = new HashMap<>();
+
+    /**
+     * Class loaders by the libraries they load, in the order they were last used. Evicted loaders aren't closed, as a
+     * run still in progress may be using them, and are collected once nothing references them.
+     */
+    private final Map<List<LibraryKey>, ClassLoader> classLoaders = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<LibraryKey>, ClassLoader> eldest) {
+            return size() > MAX_CLASS_LOADERS;
+        }
+    };
+
+    /**
+     * Enables caching for every following run in this process.
+     */
+    public static void enableSharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new LoadedLibraryCache();
+        }
+    }
+
+    /**
+     * @return The cache shared by runs in this process, or empty if this process doesn't keep libraries loaded
+     */
+    public static Optional<LoadedLibraryCache> getSharedCache() {
+        return Optional.ofNullable(sharedCache);
+    }
+
+    /**
+     * Gets an opened library, opening it if it isn't cached or has changed since it was. The returned archive is owned
+     * by the cache and must not be closed.
+     *
+     * @param qllPath The path of the .qll
+     * @param opener  Opens the library and maps its native jar, if it isn't cached
+     * @return The opened library
+     */
+    public CachedLibrary getLibrary(Path qllPath, LibraryOpener opener) throws IOException {
+        var key = LibraryKey.of(qllPath);
+
+        synchronized (libraries) {
+            var cached = libraries.get(key.path());
+
+            if (cached != null && cached.key().equals(key)) {
+                LOGGER.debug("Reusing loaded library {}", qllPath.getFileName());
+                return cached;
+            }
+        }
+
+        // Opened outside the lock, so libraries are still opened concurrently
+        var opened = opener.open(qllPath);
+        var library = new CachedLibrary(key, opened.archive(), opened.nativeJar());
+
+        synchronized (libraries) {
+            var replaced = libraries.put(key.path(), library);
+
+            if (replaced != null && replaced != library) {
+                LOGGER.debug("Library {} changed, dropping its previously loaded version", qllPath.getFileName());
+                closeQuietly(replaced.archive());
+
+                // Loaders defined classes from the old jar, so they can't be reused
+                synchronized (classLoaders) {
+                    classLoaders.keySet().removeIf(keys -> keys.stream().anyMatch(cachedKey -> cachedKey.path().equals(key.path())));
+                }
+            }
+        }
+
+        return library;
+    }
+
+    /**
+     * Gets the class loader of a set of libraries, creating it if no run has loaded exactly these native jars yet.
+     *
+     * @param libraries The libraries loaded by the run, in the order their jars are added to the loader
+     * @param creator   Creates the class loader, if it isn't cached
+     * @return The class loader for the libraries
+     */
+    public ClassLoader getClassLoader(List<CachedLibrary> libraries, Supplier<ClassLoader> creator) {
+        var keys = libraries.stream()
+                .filter(library -> library.nativeJar().isPresent())
+                .map(CachedLibrary::key)
+                .toList();
+
+        synchronized (classLoaders) {
+            var cached = classLoaders.get(keys);
+
+            if (cached != null) {
+                LOGGER.debug("Reusing native class loader of {} libraries", keys.size());
+                return cached;
+            }
+
+            var classLoader = creator.get();
+            classLoaders.put(keys, classLoader);
+            return classLoader;
+        }
+    }
+
+    private static void closeQuietly(QllArchive archive) {
+        try {
+            archive.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close {}", archive.getPath(), e);
+        }
+    }
+
+    /**
+     * Opens a library that isn't cached yet.
+     */
+    @FunctionalInterface
+    public interface LibraryOpener {
+        OpenedLibrary open(Path qllPath) throws IOException;
+    }
+
+    /**
+     * A freshly opened library.
+     *
+     * @param archive   The opened .qll
+     * @param nativeJar The mapped native jar, if the library has one
+     */
+    public record OpenedLibrary(QllArchive archive, Optional<MappedZip> nativeJar) {}
+
+    /**
+     * A library kept open by the cache.
+     *
+     * @param key       The version of the .qll that was opened
+     * @param archive   The opened .qll
+     * @param nativeJar The mapped native jar, if the library has one
+     */
+    public record CachedLibrary(LibraryKey key, QllArchive archive, Optional<MappedZip> nativeJar) {}
+
+    /**
+     * Identifies a version of a .qll on disk. Rebuilding a library replaces its file, changing its modification time.
+     *
+     * @param path         The absolute path of the .qll
+     * @param size         The size of the file
+     * @param lastModified The time the file was last modified
+     */
+    public record LibraryKey(Path path, long size, FileTime lastModified) {
+        static LibraryKey of(Path qllPath) throws IOException {
+            var absolutePath = qllPath.toAbsolutePath().normalize();
+            var attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class);
+
+            return new LibraryKey(absolutePath, attributes.size(), attributes.lastModifiedTime());
+        }
+    }
+}
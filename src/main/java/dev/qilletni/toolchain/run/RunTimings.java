@@ -0,0 +1,293 @@
+package dev.qilletni.toolchain.run;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Records where a run spends its time, for <code>run --timings</code>. Each phase of the run records its wall time,
+ * the heap memory allocated by the whole process and the bytes the process read during it. Libraries are loaded
+ * concurrently, so each library instead records the memory allocated by the thread loading it.
+ * <br><br>
+ * Allocations are only known on JVMs with HotSpot's thread allocation counters, and bytes read only on Linux. Values
+ * that aren't known are left out of the report. Native jars are memory mapped, so reading their classes doesn't count
+ * as bytes read.
+ */
+public class RunTimings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunTimings.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final Path PROCESS_IO_PATH = Path.of("/proc/self/io");
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    private final long startNanos = System.nanoTime();
+
+    private final List<PhaseTiming> phases = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<LibraryTiming> libraries = Collections.synchronizedList(new ArrayList<>());
+
+    public RunTimings() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean hotspotThreadMXBean && hotspotThreadMXBean.isThreadAllocatedMemorySupported()) {
+            hotspotThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+            this.threadMXBean = hotspotThreadMXBean;
+        } else {
+            this.threadMXBean = null;
+        }
+    }
+
+    /**
+     * Starts timing a phase of the run, which is recorded when the returned timer is closed. Phases are expected to
+     * run one after another.
+     *
+     * @param name The name of the phase
+     * @return The timer of the phase
+     */
+    public Timer startPhase(String name) {
+        var startAllocatedBytes = getTotalAllocatedBytes();
+        var startBytesRead = getProcessBytesRead();
+
+        return new Timer(System.nanoTime(), wallNanos -> phases.add(new PhaseTiming(name, toMillis(wallNanos),
+                difference(startAllocatedBytes, getTotalAllocatedBytes()), difference(startBytesRead, getProcessBytesRead()))));
+    }
+
+    /**
+     * Starts timing the loading of a single library, which is recorded when the returned timer is closed. The timer
+     * must be closed on the thread that started it.
+     *
+     * @param name        The name of the library
+     * @param version     The version of the library
+     * @param archivePath The .qll being loaded
+     * @return The timer of the library
+     */
+    public Timer startLibrary(String name, String version, Path archivePath) {
+        var startAllocatedBytes = getCurrentThreadAllocatedBytes();
+
+        return new Timer(System.nanoTime(), wallNanos -> libraries.add(new LibraryTiming(name, version, toMillis(wallNanos),
+                difference(startAllocatedBytes, getCurrentThreadAllocatedBytes()), getFileSize(archivePath))));
+    }
+
+    /**
+     * Creates the report of everything recorded so far.
+     *
+     * @param program The program that was run
+     * @return The report
+     */
+    public Report createReport(Path program) {
+        List<PhaseTiming> phasesCopy;
+        List<LibraryTiming> librariesCopy;
+
+        synchronized (phases) {
+            phasesCopy = List.copyOf(phases);
+        }
+
+        synchronized (libraries) {
+            librariesCopy = libraries.stream()
+                    .sorted(Comparator.comparingDouble(LibraryTiming::wallMillis).reversed())
+                    .toList();
+        }
+
+        return new Report(FORMAT_VERSION, program.toAbsolutePath().toString(), toMillis(System.nanoTime() - startNanos), phasesCopy, librariesCopy);
+    }
+
+    /**
+     * Logs a report as a table of phases, followed by the libraries from slowest to fastest.
+     *
+     * @param report The report to log
+     */
+    public static void logReport(Report report) {
+        LOGGER.info("Timings of {} ({} ms total):", report.program(), formatMillis(report.totalMillis()));
+        LOGGER.info("  {} {} {} {}", pad("Phase", 24), padLeft("Wall", 10), padLeft("Allocated", 12), padLeft("Read", 12));
+
+        for (var phase : report.phases()) {
+            LOGGER.info("  {} {} {} {}", pad(phase.name(), 24), padLeft(formatMillis(phase.wallMillis()) + " ms", 10),
+                    padLeft(formatBytes(phase.allocatedBytes()), 12), padLeft(formatBytes(phase.bytesRead()), 12));
+        }
+
+        if (report.libraries().isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("  {} {} {} {}", pad("Library", 24), padLeft("Wall", 10), padLeft("Allocated", 12), padLeft("Archive", 12));
+
+        for (var library : report.libraries()) {
+            LOGGER.info("  {} {} {} {}", pad(library.name() + " " + library.version(), 24), padLeft(formatMillis(library.wallMillis()) + " ms", 10),
+                    padLeft(formatBytes(library.allocatedBytes()), 12), padLeft(formatBytes(library.archiveBytes()), 12));
+        }
+    }
+
+    /**
+     * Writes a report as JSON.
+     *
+     * @param report   The report to write
+     * @param jsonPath The file to write it to
+     */
+    public static void writeReport(Report report, Path jsonPath) throws IOException {
+        var parent = jsonPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Files.writeString(jsonPath, gson.toJson(report));
+    }
+
+    private Long getTotalAllocatedBytes() {
+        if (threadMXBean == null) {
+            return null;
+        }
+
+        var allocatedBytes = threadMXBean.getTotalThreadAllocatedBytes();
+        return allocatedBytes == -1 ? null : allocatedBytes;
+    }
+
+    /**
+     * Virtual threads don't have allocation counters, so this is unknown on them.
+     */
+    private Long getCurrentThreadAllocatedBytes() {
+        if (threadMXBean == null) {
+            return null;
+        }
+
+        var allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+        return allocatedBytes == -1 ? null : allocatedBytes;
+    }
+
+    /**
+     * Reads the number of bytes the process has read so far, including from the page cache, from Linux's
+     * <code>/proc/self/io</code>.
+     */
+    private static Long getProcessBytesRead() {
+        if (!Files.isReadable(PROCESS_IO_PATH)) {
+            return null;
+        }
+
+        try {
+            for (var line : Files.readAllLines(PROCESS_IO_PATH)) {
+                if (line.startsWith("rchar:")) {
+                    return Long.parseLong(line.substring("rchar:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Unable to read {}", PROCESS_IO_PATH, e);
+        }
+
+        return null;
+    }
+
+    private static Long getFileSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Long difference(Long start, Long end) {
+        return start == null || end == null ? null : end - start;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private static String formatMillis(double millis) {
+        return "%.2f".formatted(millis);
+    }
+
+    private static String formatBytes(Long bytes) {
+        if (bytes == null) {
+            return "-";
+        }
+
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+
+        if (bytes < 1024 * 1024) {
+            return "%.1f KiB".formatted(bytes / 1024.0);
+        }
+
+        return "%.1f MiB".formatted(bytes / (1024.0 * 1024.0));
+    }
+
+    private static String pad(String text, int width) {
+        return text.length() >= width ? text : text + " ".repeat(width - text.length());
+    }
+
+    private static String padLeft(String text, int width) {
+        return text.length() >= width ? text : " ".repeat(width - text.length()) + text;
+    }
+
+    /**
+     * Times a phase or library until it is closed.
+     */
+    public static class Timer implements AutoCloseable {
+
+        private final long startNanos;
+        private final LongConsumer recorder;
+        private boolean closed;
+
+        private Timer(long startNanos, LongConsumer recorder) {
+            this.startNanos = startNanos;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            recorder.accept(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * The timings of a single run.
+     *
+     * @param formatVersion The version of the report's format
+     * @param program       The absolute path of the program that was run
+     * @param totalMillis   The time from the start of the command until the report was created
+     * @param phases        The phases of the run, in the order they ran
+     * @param libraries     The libraries loaded, from slowest to fastest
+     */
+    public record Report(int formatVersion, String program, double totalMillis, List<PhaseTiming> phases, List<LibraryTiming> libraries) {}
+
+    /**
+     * The timing of a phase of the run.
+     *
+     * @param name           The name of the phase
+     * @param wallMillis     The wall time of the phase
+     * @param allocatedBytes The heap memory allocated by the whole process during the phase, if known
+     * @param bytesRead      The bytes read by the whole process during the phase, if known
+     */
+    public record PhaseTiming(String name, double wallMillis, Long allocatedBytes, Long bytesRead) {}
+
+    /**
+     * The timing of loading a single library, which is opening its archive, mapping or extracting its native jar, and
+     * indexing its sources.
+     *
+     * @param name           The name of the library
+     * @param version        The version of the library
+     * @param wallMillis     The wall time spent loading the library
+     * @param allocatedBytes The heap memory allocated while loading the library, if known
+     * @param archiveBytes   The size of the library's .qll, if known
+     */
+    public record LibraryTiming(String name, String version, double wallMillis, Long allocatedBytes, Long archiveBytes) {}
+}
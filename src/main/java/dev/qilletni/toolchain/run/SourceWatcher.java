@@ -0,0 +1,170 @@
+package dev.qilletni.toolchain.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a program and its local library's sources for changes. Directories are watched recursively, and new
+ * directories are watched as they are created. Changes are collected until the files have been quiet for a moment, so
+ * an editor saving several files at once results in a single batch of changes.
+ */
+public class SourceWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceWatcher.class);
+
+    /**
+     * How long no more changes must be seen before a batch of changes is returned.
+     */
+    private static final long QUIET_PERIOD_MILLIS = 150;
+
+    private final WatchService watchService;
+
+    /**
+     * The directory each registered key watches.
+     */
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    /**
+     * The roots of the directories watched recursively. New directories under these are watched as well.
+     */
+    private final Set<Path> watchedTrees = new HashSet<>();
+
+    public SourceWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Watches a single directory, without its subdirectories.
+     *
+     * @param directory The directory to watch
+     */
+    public void watchDirectory(Path directory) throws IOException {
+        var absoluteDirectory = directory.toAbsolutePath().normalize();
+        var key = absoluteDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        watchedDirectories.put(key, absoluteDirectory);
+        LOGGER.debug("Watching {}", absoluteDirectory);
+    }
+
+    /**
+     * Watches a directory and all of its subdirectories.
+     *
+     * @param directory The root directory to watch
+     */
+    public void watchDirectoryTree(Path directory) throws IOException {
+        watchedTrees.add(directory.toAbsolutePath().normalize());
+        registerTree(directory);
+    }
+
+    private void registerTree(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watchDirectory(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Blocks until at least one <code>.ql</code> or <code>qilletni_info</code> file changes, and returns every such file
+     * changed until the files are quiet again.
+     *
+     * @return The absolute paths of the changed files
+     */
+    public Set<Path> awaitChanges() throws InterruptedException {
+        var changedFiles = new LinkedHashSet<Path>();
+
+        try {
+            while (changedFiles.isEmpty()) {
+                collectEvents(watchService.take(), changedFiles);
+            }
+
+            WatchKey key;
+            while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                collectEvents(key, changedFiles);
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException("Source watcher was closed");
+        }
+
+        return changedFiles;
+    }
+
+    private void collectEvents(WatchKey key, Set<Path> changedFiles) {
+        var directory = watchedDirectories.get(key);
+
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                continue;
+            }
+
+            var changedPath = directory.resolve((Path) event.context());
+
+            // Recursively watched directories have to pick up new subdirectories themselves
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changedPath) && isWatchingTree(directory)) {
+                try {
+                    registerTree(changedPath);
+
+                    // Files may have been written to the directory before it was being watched
+                    try (var walk = Files.walk(changedPath)) {
+                        walk.filter(Files::isRegularFile).filter(SourceWatcher::isSourceFile).forEach(changedFiles::add);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to watch new directory {}", changedPath, e);
+                }
+
+                continue;
+            }
+
+            if (isSourceFile(changedPath)) {
+                LOGGER.debug("{}: {}", kindName(event), changedPath);
+                changedFiles.add(changedPath);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * A directory watched on its own, such as the program's directory, doesn't pick up new subdirectories.
+     */
+    private boolean isWatchingTree(Path directory) {
+        return watchedTrees.stream().anyMatch(directory::startsWith);
+    }
+
+    private static boolean isSourceFile(Path path) {
+        var fileName = path.getFileName().toString();
+        return fileName.endsWith(".ql") || fileName.startsWith("qilletni_info.");
+    }
+
+    private static String kindName(WatchEvent<?> event) {
+        return event.kind().name().substring("ENTRY_".length()).toLowerCase();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
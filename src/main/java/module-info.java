@@ -9,4 +9,5 @@ module qilletni.toolchain {
     requires info.picocli;
     requires com.google.gson;
     requires org.apache.logging.log4j.core;
+    requires jdk.management;
 }
@@ -0,0 +1,146 @@
+package dev.qilletni.toolchain.docs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QilletniSymbolExtractorTest {
+
+    private final QilletniSymbolExtractor symbolExtractor = new QilletniSymbolExtractor();
+
+    @Test
+    void findsEntityFieldsAndMethods() {
+        var symbols = extract("""
+                entity Counter {
+                    int count = 0
+                    string name
+
+                    Counter(name)
+
+                    fun increment() {
+                        count = count + 1
+                    }
+
+                    static fun create(name) {
+                        return new Counter(name)
+                    }
+                }
+                """);
+
+        assertEquals(List.of(
+                new SearchSymbol("Counter", SearchSymbol.ENTITY, null, "entity Counter", "counter.ql", null),
+                new SearchSymbol("count", SearchSymbol.FIELD, "Counter", "int count", "counter.ql", null),
+                new SearchSymbol("name", SearchSymbol.FIELD, "Counter", "string name", "counter.ql", null),
+                new SearchSymbol("increment", SearchSymbol.FUNCTION, "Counter", "fun increment()", "counter.ql", null),
+                new SearchSymbol("create", SearchSymbol.FUNCTION, "Counter", "static fun create(name)", "counter.ql", null)
+        ), symbols);
+    }
+
+    @Test
+    void findsExtensionFunctions() {
+        var symbols = extract("""
+                native fun play(song) on song
+
+                fun shuffle(list,
+                            times) on collection {
+                    return list
+                }
+                """);
+
+        assertEquals(List.of(
+                new SearchSymbol("play", SearchSymbol.FUNCTION, "song", "native fun play(song) on song", "counter.ql", null),
+                new SearchSymbol("shuffle", SearchSymbol.FUNCTION, "collection", "fun shuffle(list, times) on collection", "counter.ql", null)
+        ), symbols);
+    }
+
+    @Test
+    void skipsDeclarationsInFunctionBodies() {
+        var symbols = extract("""
+                fun outer() {
+                    int local = 1
+
+                    fun inner() {
+                        print(local)
+                    }
+                }
+
+                entity Player {
+                    fun play() {
+                        fun helper() {}
+                        int volume = 5
+                    }
+                }
+
+                int total = 0
+                """);
+
+        assertEquals(List.of("outer", "Player", "play", "total"), names(symbols));
+        assertEquals(SearchSymbol.VARIABLE, symbols.getLast().kind());
+        assertNull(symbols.getLast().owner());
+    }
+
+    @Test
+    void ignoresCommentsAndStrings() {
+        var symbols = extract("""
+                // fun commented() {
+                /* entity Fake { */
+                string brace = "{ fun fake() {"
+                string escaped = "a \\" { quote"
+
+                fun real() {
+                    print("}}}")
+                }
+
+                entity After {
+                    fun method() {}
+                }
+                """);
+
+        assertEquals(List.of("brace", "escaped", "real", "After", "method"), names(symbols));
+        assertEquals("After", symbols.getLast().owner());
+    }
+
+    @Test
+    void summarizesDocComments() {
+        var symbols = extract("""
+                /**
+                 * Plays a song on the current device. Songs are queued if something is playing.
+                 *
+                 * @param song The song to play
+                 */
+                native fun play(song)
+
+                /* Not a doc comment. */
+                fun undocumented() {}
+
+                /** Documents the variable right after it. */
+                int documented = 1
+                fun afterCode() {}
+
+                /** Without a sentence break, a long description is cut off at one hundred characters, so it fits in the results */
+                fun long() {}
+                """);
+
+        assertEquals("Plays a song on the current device.", symbols.get(0).summary());
+        assertNull(symbols.get(1).summary());
+        assertEquals("Documents the variable right after it.", symbols.get(2).summary());
+        assertNull(symbols.get(3).summary());
+
+        var longSummary = symbols.get(4).summary();
+        assertTrue(longSummary.length() <= 100);
+        assertTrue(longSummary.startsWith("Without a sentence break"));
+        assertTrue(longSummary.endsWith("..."));
+    }
+
+    private List<SearchSymbol> extract(String source) {
+        return symbolExtractor.extractSymbols(source, "counter.ql");
+    }
+
+    private static List<String> names(List<SearchSymbol> symbols) {
+        return symbols.stream().map(SearchSymbol::name).toList();
+    }
+}